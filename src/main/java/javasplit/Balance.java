@@ -21,7 +21,7 @@
 // SOFTWARE.
 package javasplit;
 
-import javasplit.utils.Currency;
+import javasplit.utils.Money;
 import javasplit.utils.TimeStamp;
 
 /**
@@ -32,8 +32,8 @@ public class Balance extends Transfer {
      * Initialize a Balance object.
      */
     public Balance(Group group, String purchaser, String recipient,
-            Double amount, Currency currency, TimeStamp date) {
-        super(group, "Pending balance", purchaser, recipient, amount, currency, date);
+            Money amount, TimeStamp date) {
+        super(group, "Pending balance", purchaser, recipient, amount, date);
     }
 
     /**
@@ -50,9 +50,9 @@ public class Balance extends Transfer {
      * @return A Transfer object.
      */
     public Transfer toTransfer() {
-        String recipient = recipients.values().iterator().next().getName();
+        String recipient = group.getMember(recipients[0]).getName();
         return group.addTransfer(title, purchaser.getName(), recipient,
-                amount, currency, date);
+                amount, date);
     }
 
     /**
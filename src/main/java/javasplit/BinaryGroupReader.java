@@ -0,0 +1,376 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javasplit.utils.Currency;
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+
+/**
+ * Binary group reader decoding a memory mapped file written by the
+ * BinaryGroupWriter.
+ *
+ * Every string of the table is decoded once and shared by all members and
+ * purchases referring to it. Files with a summary are read summary first:
+ * only the group, members and subtotals are read on opening and the reader
+ * keeps the mapping. Files with a page index serve single purchases and
+ * transfers by decoding their page as unlinked copies, the last decoded
+ * page is kept for sequential access. Loading the history decodes and
+ * links all purchases and transfers.
+ */
+final class BinaryGroupReader {
+    private Group group;
+    private ByteBuffer buffer;
+    private String[] table;
+    private int[] table_offsets;
+    private long number_of_purchases = 0;
+    private long number_of_transfers = 0;
+    private int purchases_offset = 0;
+    private int transfers_offset = 0;
+    private int page_size = 0;
+    private int index_offset = 0;
+    private int page = -1;
+    private boolean page_transfer = false;
+    private Purchase[] page_entries = null;
+
+    /**
+     * Initialize a BinaryGroupReader object filling the given group.
+     */
+    BinaryGroupReader(Group group) {
+        this.group = group;
+    }
+
+    /**
+     * Reads the group from a path.
+     */
+    void read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (readGroup()) {
+                group.setHistory(this);
+                return;
+            }
+            readHistory();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw truncated(e);
+        }
+    }
+
+    /**
+     * Reads and links the purchases and transfers, the mapping is released
+     * afterwards.
+     */
+    void readHistory() {
+        try {
+            buffer.position(purchases_offset);
+            for (long i = 0; i < number_of_purchases; i++) {
+                group.append(readPurchase(false, true));
+            }
+
+            if (transfers_offset > 0) {
+                buffer.position(transfers_offset);
+            } else {
+                // version 1 stores the transfer count after the purchases
+                number_of_transfers = readVarint();
+            }
+            for (long i = 0; i < number_of_transfers; i++) {
+                group.append(readPurchase(true, true));
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw truncated(e);
+        } finally {
+            buffer = null;
+            page_entries = null;
+        }
+    }
+
+    /**
+     * Checks the file to have a page index.
+     *
+     * @return A boolean flag.
+     */
+    boolean isPaged() {
+        return page_size > 0;
+    }
+
+    /**
+     * Gets the number of stored purchases or transfers.
+     *
+     * @return A long value.
+     */
+    long numberOfEntries(boolean transfer) {
+        return transfer ? number_of_transfers : number_of_purchases;
+    }
+
+    /**
+     * Gets a stored purchase or transfer by its position as an unlinked
+     * copy, decoding its page unless it is the last decoded one.
+     *
+     * @return A Purchase object.
+     */
+    Purchase readEntry(boolean transfer, long index) {
+        if (index < 0 || index >= numberOfEntries(transfer)) {
+            throw new RuntimeException(String.format("Invalid entry index %d!", index));
+        }
+
+        int number = (int) (index / page_size);
+        if (page_entries == null || page != number || page_transfer != transfer) {
+            int slot = transfer ? 1 + BinaryGroupWriter.numberOfPages(number_of_purchases) + number : 1 + number;
+            long entries = Math.min(page_size, numberOfEntries(transfer) - (long) number * page_size);
+            page_entries = null;
+            try {
+                buffer.position(Math.toIntExact(buffer.getLong(index_offset + slot * Long.BYTES)));
+                Purchase[] tmp = new Purchase[(int) entries];
+                for (int i = 0; i < tmp.length; i++) {
+                    tmp[i] = readPurchase(transfer, false);
+                }
+                page_entries = tmp;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw truncated(e);
+            }
+            page = number;
+            page_transfer = transfer;
+        }
+
+        return page_entries[(int) (index % page_size)];
+    }
+
+    /**
+     * Checks a member id to be valid.
+     *
+     * @return A integer value.
+     */
+    private int checkMember(long id) {
+        if (id < 0 || id >= group.getNumberOfMembers()) {
+            throw new RuntimeException(String.format("Invalid member id %d at offset %d!",
+                    id, buffer.position()));
+        }
+
+        return (int) id;
+    }
+
+    /**
+     * Reads a currency from the string table.
+     *
+     * @return A Currency object.
+     */
+    private Currency readCurrency() {
+        String name = readString();
+        try {
+            return Currency.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException(String.format("Unknown currency \"%s\" at offset %d!",
+                    name, buffer.position()));
+        }
+    }
+
+    /**
+     * Reads the group up to the purchase history.
+     *
+     * @return A boolean flag, true for a deferred history.
+     */
+    private boolean readGroup() {
+        for (byte tmp : BinaryGroupWriter.magic) {
+            if (buffer.get() != tmp) {
+                throw new RuntimeException("Invalid binary group file!");
+            }
+        }
+
+        long version = readVarint();
+        if (version < 1 || version > BinaryGroupWriter.version) {
+            throw new RuntimeException("Unsupported binary group file version!");
+        }
+
+        // the strings are decoded on first use
+        table = new String[(int) readVarint()];
+        table_offsets = new int[table.length];
+        for (int i = 0; i < table.length; i++) {
+            table_offsets[i] = buffer.position();
+            int length = (int) readVarint();
+            buffer.position(buffer.position() + length);
+        }
+
+        group.setName(readString());
+        group.setDescription(readString());
+        group.setCurrency(readCurrency());
+        group.setStamp(TimeStamp.ofEpochSecond(readSigned()));
+        group.setJournalGeneration(readVarint());
+
+        int[] segments = new int[(int) readVarint() + 1];
+        for (int i = 1; i < segments.length; i++) {
+            Currency currency = readCurrency();
+            boolean dated = buffer.get() != 0;
+            long effective = dated ? readSigned() : ExchangeRates.undated;
+            double rate = Double.longBitsToDouble(buffer.getLong());
+            if (dated) {
+                group.setExchangeRate(currency, rate, TimeStamp.ofEpochSecond(effective));
+            } else {
+                group.setExchangeRate(currency, rate);
+            }
+            segments[i] = group.getSegment(currency, effective);
+        }
+
+        long members = readVarint();
+        for (long i = 0; i < members; i++) {
+            Member member = group.addMember(readString());
+            member.setStamp(TimeStamp.ofEpochSecond(readSigned()));
+        }
+
+        if (version == 1) {
+            number_of_purchases = readVarint();
+            purchases_offset = buffer.position();
+            return false;
+        }
+
+        // summary
+        for (Member member : group.getMembers()) {
+            for (int segment : segments) {
+                member.addPaid(segment, readSigned());
+                member.addOwed(segment, readSigned());
+            }
+        }
+        for (int segment : segments) {
+            group.addTurnoverUnits(segment, readSigned());
+        }
+        number_of_purchases = readVarint();
+        number_of_transfers = readVarint();
+        if (version == 2) {
+            transfers_offset = Math.toIntExact(buffer.getLong());
+            purchases_offset = buffer.position();
+            return true;
+        }
+
+        // page index
+        page_size = (int) readVarint();
+        if (page_size <= 0) {
+            throw new RuntimeException(String.format("Invalid page size at offset %d!", buffer.position()));
+        }
+        index_offset = buffer.position();
+        transfers_offset = Math.toIntExact(buffer.getLong());
+        purchases_offset = index_offset + (1 + BinaryGroupWriter.numberOfPages(number_of_purchases)
+                + BinaryGroupWriter.numberOfPages(number_of_transfers)) * Long.BYTES;
+
+        return true;
+    }
+
+    /**
+     * Reads a purchase or transfer, linked or as an unlinked copy.
+     *
+     * @return A Purchase object.
+     */
+    private Purchase readPurchase(boolean transfer, boolean link) {
+        String title = readString();
+        Member purchaser = group.getMember(checkMember(readVarint()));
+        int[] recipients = new int[(int) readVarint()];
+        long previous = 0;
+        for (int i = 0; i < recipients.length; i++) {
+            previous += readVarint();
+            recipients[i] = checkMember(previous);
+        }
+        Currency currency = readCurrency();
+        Money amount = new Money(readSigned(), currency);
+        TimeStamp date = TimeStamp.ofEpochSecond(readSigned());
+        long stamp = readSigned();
+
+        Purchase purchase;
+        if (transfer) {
+            if (recipients.length != 1) {
+                throw new RuntimeException(String.format("Transfer requires exactly one recipient at offset %d!",
+                        buffer.position()));
+            }
+            purchase = new Transfer(group, title, purchaser, recipients[0], amount, date, link);
+        } else {
+            purchase = new Purchase(group, title, purchaser, recipients, amount, date, link);
+        }
+        purchase.setStamp(TimeStamp.ofEpochSecond(stamp));
+
+        return purchase;
+    }
+
+    /**
+     * Creates an exception for a truncated file.
+     *
+     * @return A RuntimeException object.
+     */
+    private RuntimeException truncated(RuntimeException e) {
+        return new RuntimeException(String.format("Truncated binary group file at offset %d!",
+                buffer.position()), e);
+    }
+
+    /**
+     * Reads a zigzag encoded signed varint.
+     *
+     * @return A long value.
+     */
+    private long readSigned() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a string from the string table.
+     *
+     * @return A string.
+     */
+    private String readString() {
+        int index = (int) readVarint();
+        if (table[index] == null) {
+            int position = buffer.position();
+            buffer.position(table_offsets[index]);
+            byte[] bytes = new byte[(int) readVarint()];
+            buffer.get(bytes);
+            table[index] = new String(bytes, StandardCharsets.UTF_8);
+            buffer.position(position);
+        }
+
+        return table[index];
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @return A long value.
+     */
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte tmp = buffer.get();
+            value |= (long) (tmp & 0x7F) << shift;
+            if (tmp >= 0) {
+                return value;
+            }
+        }
+
+        throw new RuntimeException(String.format("Invalid varint at offset %d!", buffer.position()));
+    }
+}
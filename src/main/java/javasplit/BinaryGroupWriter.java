@@ -0,0 +1,303 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javasplit.utils.Currency;
+
+/**
+ * Binary group writer.
+ *
+ * Layout: magic, version, a deduplicated string table (group name and
+ * description, member names, titles and currency names), the group, the
+ * exchange rate points, the members, the summary, the purchases and the
+ * transfers. Counts, string indices and member ids are unsigned varints,
+ * recipient ids are delta encoded, dates, stamps and minor units are zigzag
+ * varints and exchange rates keep their raw double bits.
+ *
+ * The summary holds the paid and owed subtotals of every member and the
+ * turnover per exchange rate segment, in the order of the group currency
+ * followed by the rate points, and the purchase and transfer counts.
+ * Balances and turnover are thus available without reading the purchase
+ * history. The summary is followed by the page index: the page size, the
+ * byte offset of the transfers and the byte offset of every page of
+ * page_size purchases and of transfers as fixed size longs, so a single
+ * page is found in O(1) and decoded on demand.
+ */
+final class BinaryGroupWriter {
+    static final String extension = ".jsplit";
+    static final byte[] magic = { 'J', 'S', 'P', 'L' };
+    static final int version = 3;
+    static final int page_size = 1024;
+
+    private Group group;
+    private OutputStream out;
+    private long position = 0;
+    private long index_slot = 0;
+    private long[] index;
+    private HashMap<String, Integer> strings = new HashMap<String, Integer>();
+    private ArrayList<String> table = new ArrayList<String>();
+
+    /**
+     * Initialize a BinaryGroupWriter object with group.
+     */
+    BinaryGroupWriter(Group group) {
+        this.group = group;
+    }
+
+    /**
+     * Checks a path to name a binary group file.
+     *
+     * @return A boolean flag.
+     */
+    static boolean isBinary(String path) {
+        return path.endsWith(extension);
+    }
+
+    /**
+     * Writes the group to a path.
+     */
+    void write(Path path) throws IOException {
+        collectStrings();
+
+        GroupWriter.replace(path, channel -> {
+            out = new BufferedOutputStream(Channels.newOutputStream(channel), GroupWriter.buffer_size);
+            writeGroup();
+            out.flush();
+
+            // the page offsets are known after the pages only
+            ByteBuffer buffer = ByteBuffer.allocate(index.length * Long.BYTES);
+            buffer.asLongBuffer().put(index);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, index_slot + buffer.position());
+            }
+        });
+    }
+
+    /**
+     * Collects the deduplicated string table.
+     */
+    private void collectStrings() {
+        intern(group.getName());
+        intern(group.getDescription());
+        intern(group.getCurrency().name());
+        for (Currency currency : group.getExchangeRates().getRates().keySet()) {
+            intern(currency.name());
+        }
+        for (Member member : group.getMembers()) {
+            intern(member.getName());
+        }
+        for (Purchase purchase : group.getPurchases()) {
+            intern(purchase.title);
+            intern(purchase.amount.getCurrency().name());
+        }
+        for (Transfer transfer : group.getTransfers()) {
+            intern(transfer.title);
+            intern(transfer.amount.getCurrency().name());
+        }
+    }
+
+    /**
+     * Adds a string to the table.
+     */
+    private void intern(String string) {
+        if (!strings.containsKey(string)) {
+            strings.put(string, table.size());
+            table.add(string);
+        }
+    }
+
+    /**
+     * Writes a single byte.
+     */
+    private void write(int value) throws IOException {
+        out.write(value);
+        position++;
+    }
+
+    /**
+     * Writes a byte array.
+     */
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    /**
+     * Writes the whole group.
+     */
+    private void writeGroup() throws IOException {
+        write(magic);
+        writeVarint(version);
+
+        writeVarint(table.size());
+        for (String string : table) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes);
+        }
+
+        writeString(group.getName());
+        writeString(group.getDescription());
+        writeString(group.getCurrency().name());
+        writeSigned(group.getStamp().getEpochSecond());
+        writeVarint(group.getJournalGeneration());
+
+        ExchangeRates exchange_rates = group.getExchangeRates();
+        Map<Currency, TreeMap<Long, Double>> rates = exchange_rates.getRates();
+        int[] segments = new int[exchange_rates.size()];
+        int points = 1;
+        for (Map.Entry<Currency, TreeMap<Long, Double>> entry : rates.entrySet()) {
+            for (Long effective : entry.getValue().keySet()) {
+                segments[points++] = exchange_rates.getSegment(entry.getKey(), effective);
+            }
+        }
+        writeVarint(points - 1);
+        for (Map.Entry<Currency, TreeMap<Long, Double>> entry : rates.entrySet()) {
+            for (Map.Entry<Long, Double> point : entry.getValue().entrySet()) {
+                writeString(entry.getKey().name());
+                if (point.getKey() == ExchangeRates.undated) {
+                    write(0);
+                } else {
+                    write(1);
+                    writeSigned(point.getKey());
+                }
+                writeLong(Double.doubleToLongBits(point.getValue()));
+            }
+        }
+
+        writeVarint(group.getNumberOfMembers());
+        for (Member member : group.getMembers()) {
+            writeString(member.getName());
+            writeSigned(member.getStamp().getEpochSecond());
+        }
+
+        // summary
+        for (Member member : group.getMembers()) {
+            for (int segment : segments) {
+                writeSigned(member.getPaid(segment));
+                writeSigned(member.getOwed(segment));
+            }
+        }
+        for (int segment : segments) {
+            writeSigned(group.getTurnoverUnits(segment));
+        }
+        int purchase_pages = numberOfPages(group.getPurchases().size());
+        writeVarint(group.getPurchases().size());
+        writeVarint(group.getTransfers().size());
+
+        // page index
+        writeVarint(page_size);
+        index = new long[1 + purchase_pages + numberOfPages(group.getTransfers().size())];
+        index_slot = position;
+        for (int i = 0; i < index.length; i++) {
+            writeLong(0);
+        }
+
+        for (int i = 0; i < group.getPurchases().size(); i++) {
+            if (i % page_size == 0) {
+                index[1 + i / page_size] = position;
+            }
+            writePurchase(group.getPurchases().get(i));
+        }
+
+        index[0] = position;
+        for (int i = 0; i < group.getTransfers().size(); i++) {
+            if (i % page_size == 0) {
+                index[1 + purchase_pages + i / page_size] = position;
+            }
+            writePurchase(group.getTransfers().get(i));
+        }
+    }
+
+    /**
+     * Gets the number of pages of a number of entries.
+     *
+     * @return A integer value.
+     */
+    static int numberOfPages(long entries) {
+        return (int) ((entries + page_size - 1) / page_size);
+    }
+
+    /**
+     * Writes a fixed size long value.
+     */
+    private void writeLong(long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            write((int) (value >>> shift));
+        }
+    }
+
+    /**
+     * Writes a purchase or transfer.
+     */
+    private void writePurchase(Purchase purchase) throws IOException {
+        writeString(purchase.title);
+        writeVarint(purchase.purchaser.getId());
+        writeVarint(purchase.recipients.length);
+        int previous = 0;
+        for (int id : purchase.recipients) {
+            writeVarint(id - previous);
+            previous = id;
+        }
+        writeString(purchase.amount.getCurrency().name());
+        writeSigned(purchase.amount.getUnits());
+        writeSigned(purchase.date.getEpochSecond());
+        writeSigned(purchase.getStamp().getEpochSecond());
+    }
+
+    /**
+     * Writes a zigzag encoded signed varint.
+     */
+    private void writeSigned(long value) throws IOException {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes the string table index of a string.
+     */
+    private void writeString(String string) throws IOException {
+        writeVarint(strings.get(string));
+    }
+
+    /**
+     * Writes an unsigned varint.
+     */
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+}
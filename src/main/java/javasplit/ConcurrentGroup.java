@@ -0,0 +1,340 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import javasplit.utils.Currency;
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+
+/**
+ * Thread safe access to a group for many concurrent writers.
+ *
+ * Every writer thread owns a batch. Adding a purchase or transfer resolves
+ * the names against a concurrent member dictionary and, under the shared
+ * read lock, creates the entry unlinked, which looks up its exchange rate
+ * segment, and sums its amounts into the batch: the paid, owed and spent
+ * subtotals per member and segment and the group aggregates. Writers thus
+ * do the work per entry in parallel and failures are thrown to the caller
+ * of the failing entry. A full batch is merged under the write lock, which
+ * adds the summed subtotals once per member and segment and appends the
+ * entries with their participations and index updates, so the exclusive
+ * part is short.
+ *
+ * Changes of members and exchange rates and readers take the write lock
+ * and merge all batches first, so a batch never spans such a change and
+ * readers run under the read lock on a consistent view containing every
+ * entry added before.
+ */
+public final class ConcurrentGroup {
+    private static final int batch_size = 1024;
+
+    private Group group;
+    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ConcurrentHashMap<String, Member> names = new ConcurrentHashMap<String, Member>();
+    private ConcurrentLinkedQueue<Batch> batches = new ConcurrentLinkedQueue<Batch>();
+    private ThreadLocal<Batch> batch = ThreadLocal.withInitial(() -> {
+        Batch tmp = new Batch();
+        batches.add(tmp);
+        return tmp;
+    });
+
+    /**
+     * Entries of one writer thread with their summed subtotals, changed by
+     * the owner under the read lock and merged under the write lock.
+     */
+    private static final class Batch {
+        private ArrayList<Purchase> entries = new ArrayList<Purchase>();
+        private int number_of_segments;
+        private long[] paid;
+        private long[] owed;
+        private long[] spent;
+        private long[] turnovers;
+        private long[] totals = new long[Currency.values().length];
+        private HashMap<YearMonth, long[]> monthly = new HashMap<YearMonth, long[]>();
+    }
+
+    /**
+     * Initialize a ConcurrentGroup object, the group must not be used
+     * directly afterwards.
+     */
+    public ConcurrentGroup(Group group) {
+        this.group = group;
+        group.load();
+        for (Member member : group.getMembers()) {
+            names.put(member.getName(), member);
+        }
+    }
+
+    /**
+     * Adds a member to the group.
+     *
+     * @return A Member object.
+     */
+    public Member addMember(String name) {
+        return write(a -> {
+            Member member = a.addMember(name);
+            names.put(name, member);
+            return member;
+        });
+    }
+
+    /**
+     * Adds a purchase to the group without waiting for readers or other
+     * writers except for merging a full batch. Unknown members and
+     * currencies without exchange rate at the date are rejected.
+     */
+    public void addPurchase(String title, String purchaser, List<String> recipients,
+            Money amount, TimeStamp date) {
+        int[] ids = new int[recipients.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = resolve(recipients.get(i)).getId();
+        }
+
+        add(false, title, resolve(purchaser), ids, amount, date);
+    }
+
+    /**
+     * Adds a transfer to the group like addPurchase.
+     */
+    public void addTransfer(String title, String purchaser, String recipient,
+            Money amount, TimeStamp date) {
+        add(true, title, resolve(purchaser), new int[] { resolve(recipient).getId() }, amount, date);
+    }
+
+    /**
+     * Links all waiting purchases and transfers.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            mergeAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of purchases and transfers waiting to be linked.
+     *
+     * @return A integer value.
+     */
+    public int getPending() {
+        lock.writeLock().lock();
+        try {
+            int pending = 0;
+            for (Batch tmp : batches) {
+                pending += tmp.entries.size();
+            }
+
+            return pending;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a reader on a consistent view of the group including every
+     * purchase and transfer added before. Readers run concurrently and must
+     * not change the group.
+     *
+     * @return The result of the reader.
+     */
+    public <T> T read(Function<Group, T> reader) {
+        lock.writeLock().lock();
+        try {
+            mergeAll();
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            return reader.apply(group);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets an exchange rate effective from a date.
+     */
+    public void setExchangeRate(Currency currency, Double rate, TimeStamp effective) {
+        write(a -> {
+            a.setExchangeRate(currency, rate, effective);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a writer with exclusive access to the group after linking the
+     * waiting purchases and transfers, for example to remove or update
+     * purchases.
+     *
+     * @return The result of the writer.
+     */
+    public <T> T write(Function<Group, T> writer) {
+        lock.writeLock().lock();
+        try {
+            mergeAll();
+            return writer.apply(group);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Creates an unlinked entry under the read lock, sums it into the batch
+     * of the calling thread and merges the batch once it is full.
+     */
+    private void add(boolean transfer, String title, Member purchaser, int[] recipients,
+            Money amount, TimeStamp date) {
+        Batch tmp = batch.get();
+
+        lock.readLock().lock();
+        try {
+            // everything that can fail happens before the batch is changed
+            Purchase purchase = transfer
+                    ? new Transfer(group, title, purchaser, recipients[0], amount, date, false)
+                    : new Purchase(group, title, purchaser, recipients, amount, date, false);
+            Money[] amount_per_member = amount.split(purchase.numberOfRecipients());
+            YearMonth month = Group.getMonth(date.getEpochSecond());
+
+            if (tmp.entries.isEmpty()) {
+                reset(tmp);
+            }
+            tmp.entries.add(purchase);
+
+            int segments = tmp.number_of_segments;
+            int segment = purchase.segment;
+            long units = amount.getUnits();
+            tmp.paid[purchaser.getId() * segments + segment] += units;
+            for (int i = 0; i < amount_per_member.length; i++) {
+                tmp.owed[purchase.recipients[i] * segments + segment] += amount_per_member[i].getUnits();
+            }
+
+            if (!transfer) {
+                tmp.spent[purchaser.getId() * segments + segment] += units;
+                tmp.turnovers[segment] += units;
+                tmp.totals[amount.getCurrency().ordinal()] += units;
+                tmp.monthly.computeIfAbsent(month, a -> new long[segments])[segment] += units;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (tmp.entries.size() >= batch_size) {
+            lock.writeLock().lock();
+            try {
+                merge(tmp);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Merges a batch into the group, requires the write lock.
+     */
+    private void merge(Batch tmp) {
+        if (tmp.entries.isEmpty()) {
+            return;
+        }
+
+        int segments = tmp.number_of_segments;
+        for (Member member : group.getMembers()) {
+            int offset = member.getId() * segments;
+            if (offset >= tmp.paid.length) {
+                break;
+            }
+
+            for (int i = 0; i < segments; i++) {
+                if (tmp.paid[offset + i] != 0) {
+                    member.addPaid(i, tmp.paid[offset + i]);
+                }
+                if (tmp.owed[offset + i] != 0) {
+                    member.addOwed(i, tmp.owed[offset + i]);
+                }
+                if (tmp.spent[offset + i] != 0) {
+                    member.addSpent(i, tmp.spent[offset + i]);
+                }
+            }
+        }
+        group.appendBatch(tmp.entries, tmp.turnovers, tmp.totals, tmp.monthly);
+
+        tmp.entries.clear();
+    }
+
+    /**
+     * Merges the batches of all writers, requires the write lock.
+     */
+    private void mergeAll() {
+        for (Batch tmp : batches) {
+            merge(tmp);
+        }
+    }
+
+    /**
+     * Clears the subtotals of an empty batch for the current members and
+     * exchange rate segments, requires the read lock.
+     */
+    private void reset(Batch tmp) {
+        int segments = group.numberOfSegments();
+        int size = group.getNumberOfMembers() * segments;
+        if (tmp.paid == null || tmp.paid.length != size) {
+            tmp.paid = new long[size];
+            tmp.owed = new long[size];
+            tmp.spent = new long[size];
+        } else {
+            Arrays.fill(tmp.paid, 0);
+            Arrays.fill(tmp.owed, 0);
+            Arrays.fill(tmp.spent, 0);
+        }
+        tmp.number_of_segments = segments;
+        tmp.turnovers = new long[segments];
+        Arrays.fill(tmp.totals, 0);
+        tmp.monthly.clear();
+    }
+
+    /**
+     * Resolves a member name through the concurrent dictionary.
+     *
+     * @return A Member object.
+     */
+    private Member resolve(String name) {
+        Member member = names.get(name);
+        if (member == null) {
+            throw new RuntimeException(String.format("No member with name \"%s\"!", name));
+        }
+
+        return member;
+    }
+}
@@ -0,0 +1,721 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Date sorted index over the purchases and transfers of a group.
+ *
+ * The index is a date sorted base and a delta of the changes since. The base
+ * keeps the entries with their date, purchaser, recipients, amount and
+ * segment as columns, and every checkpoint_size entries the running net
+ * subtotals (paid minus owed) of all members and exchange rate segments, so
+ * the subtotals as of a date sum up one checkpoint and less than
+ * checkpoint_size entries after a binary search.
+ *
+ * The group reports every booking to the index. Added entries are kept date
+ * sorted in the delta and removed base entries are marked, an update being a
+ * removal followed by an addition. Queries combine the base with the delta
+ * in O(delta) on top of the base lookup. Once the delta holds 2 sqrt(n), but
+ * at least checkpoint_size, changes it is merged into the base and the
+ * checkpoints are recomputed from the first changed position only. Entries
+ * dated at or after the last base entry are appended to the columns in
+ * place, others are merged into new columns copying the unchanged prefix, so
+ * a change costs O(1) amortized for appended dates and O(sqrt(n)) amortized
+ * otherwise. Entries of the same date are ordered by their addition to the
+ * index. A new member or exchange rate segment rebuilds the index.
+ *
+ * For statements the base positions of the entries a member takes part in
+ * are indexed per member on first use, with checkpoints of the running net
+ * subtotals per exchange rate segment every checkpoint_size rows. A merge
+ * cuts the member rows at the first changed position and the next use scans
+ * the base from there only.
+ */
+final class DateIndex {
+    static final int checkpoint_size = 256;
+
+    private int number_of_members;
+    private int number_of_segments;
+    private int size;
+    private Purchase[] entries;
+    private long[] seconds;
+    private int[] purchasers;
+    private int[][] recipients;
+    private long[] units;
+    private int[] segments;
+    private long[][] checkpoints;
+    private MemberRows[] member_rows;
+    private IdentityHashMap<Purchase, Integer> removed = new IdentityHashMap<Purchase, Integer>();
+    private ArrayList<Purchase> added = new ArrayList<Purchase>();
+
+    /**
+     * Base positions of the entries a member takes part in.
+     */
+    private static final class MemberRows {
+        private int[] rows = new int[16];
+        private int size = 0;
+        private long[] checkpoints;
+        private long[] subtotals;
+        private int scanned = 0;
+    }
+
+    /**
+     * Initialize a DateIndex object over the purchases and transfers.
+     */
+    DateIndex(Group group, int number_of_members, int number_of_segments) {
+        this.number_of_members = number_of_members;
+        this.number_of_segments = number_of_segments;
+
+        ArrayList<Purchase> tmp = new ArrayList<Purchase>(group.getPurchases());
+        tmp.addAll(group.getTransfers());
+        Purchase[] sorted = sort(tmp.toArray(new Purchase[0]));
+
+        size = sorted.length;
+        allocate(size + size / 4 + checkpoint_size);
+        for (int i = 0; i < size; i++) {
+            fill(i, sorted[i]);
+        }
+        checkpoints = new long[entries.length / checkpoint_size + 1][];
+        computeCheckpoints(0);
+
+        member_rows = new MemberRows[number_of_members];
+    }
+
+    /**
+     * Adds a booked entry to the delta.
+     */
+    synchronized void addEntry(Purchase purchase) {
+        long second = purchase.date.getEpochSecond();
+        int low = 0;
+        int high = added.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (added.get(middle).date.getEpochSecond() <= second) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        added.add(low, purchase);
+        mergeIfFull();
+    }
+
+    /**
+     * Removes an entry before its booking is removed, its fields still hold
+     * the indexed values.
+     *
+     * @return A boolean flag, false if the entry is unknown to the index.
+     */
+    synchronized boolean removeEntry(Purchase purchase) {
+        for (int i = added.size() - 1; i >= 0; i--) {
+            if (added.get(i) == purchase) {
+                added.remove(i);
+                return true;
+            }
+        }
+
+        long second = purchase.date.getEpochSecond();
+        for (int i = countBefore(second); i < size && seconds[i] == second; i++) {
+            if (entries[i] == purchase && !removed.containsKey(purchase)) {
+                removed.put(purchase, i);
+                mergeIfFull();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Allocates the base columns with a capacity.
+     */
+    private void allocate(int length) {
+        entries = new Purchase[length];
+        seconds = new long[length];
+        purchasers = new int[length];
+        recipients = new int[length][];
+        units = new long[length];
+        segments = new int[length];
+    }
+
+    /**
+     * Computes the base checkpoints from a checkpoint on, the earlier ones
+     * are kept.
+     */
+    private void computeCheckpoints(int first) {
+        long[] subtotals = first == 0 ? new long[number_of_members * number_of_segments] : checkpoints[first].clone();
+        for (int i = first * checkpoint_size; i < size; i++) {
+            if (i % checkpoint_size == 0) {
+                checkpoints[i / checkpoint_size] = subtotals.clone();
+            }
+
+            add(subtotals, purchasers[i], recipients[i], units[i], segments[i], 1);
+        }
+
+        if (size % checkpoint_size == 0) {
+            checkpoints[size / checkpoint_size] = subtotals;
+        }
+    }
+
+    /**
+     * Gets the number of base entries dated before the epoch second.
+     *
+     * @return A integer value.
+     */
+    private int countBefore(long second) {
+        return search(seconds, 0, size, second);
+    }
+
+    /**
+     * Gets the number of statement rows of a member.
+     *
+     * @return A integer value.
+     */
+    synchronized int countMemberRows(int id) {
+        int count = getMemberRows(id).size;
+        for (int position : removed.values()) {
+            count -= isParticipant(position, id) ? 1 : 0;
+        }
+        for (Purchase entry : added) {
+            count += isParticipant(entry, id) ? 1 : 0;
+        }
+
+        return count;
+    }
+
+    /**
+     * Copies an entry into the base columns.
+     */
+    private void fill(int position, Purchase entry) {
+        entries[position] = entry;
+        seconds[position] = entry.date.getEpochSecond();
+        purchasers[position] = entry.purchaser.getId();
+        recipients[position] = entry.recipients;
+        units[position] = entry.amount.getUnits();
+        segments[position] = entry.segment;
+    }
+
+    /**
+     * Gets a page of the statement entries of a member starting at a row
+     * cursor and stores the net subtotals per exchange rate segment before
+     * the page. The page walks the base rows and the delta in date order,
+     * the cursor is reached by skipping between the changes of the member.
+     *
+     * @return A Purchase array.
+     */
+    synchronized Purchase[] getMemberPage(int id, int cursor, int limit, long[] subtotals) {
+        MemberRows rows = getMemberRows(id);
+
+        // removed base rows and added entries of the member with their base row
+        int[] gone = new int[removed.size()];
+        int number_gone = 0;
+        for (int position : removed.values()) {
+            if (isParticipant(position, id)) {
+                gone[number_gone++] = Arrays.binarySearch(rows.rows, 0, rows.size, position);
+            }
+        }
+        Arrays.sort(gone, 0, number_gone);
+
+        ArrayList<Purchase> inserted = new ArrayList<Purchase>();
+        int[] at = new int[added.size()];
+        for (Purchase entry : added) {
+            if (isParticipant(entry, id)) {
+                at[inserted.size()] = countMemberRowsUntil(rows, entry.date.getEpochSecond());
+                inserted.add(entry);
+            }
+        }
+
+        // skip to the cursor, inserted entries precede the base row they are placed at
+        int row = 0;
+        int next_gone = 0;
+        int next_inserted = 0;
+        int position = 0;
+        while (position < cursor) {
+            int event = Math.min(next_gone < number_gone ? gone[next_gone] : rows.size,
+                    next_inserted < inserted.size() ? at[next_inserted] : rows.size);
+            if (row < event) {
+                int step = Math.min(event - row, cursor - position);
+                row += step;
+                position += step;
+            } else if (next_inserted < inserted.size() && at[next_inserted] == row) {
+                next_inserted++;
+                position++;
+            } else if (next_gone < number_gone && gone[next_gone] == row) {
+                next_gone++;
+                row++;
+            } else {
+                break;
+            }
+        }
+
+        long[] tmp = getMemberSubtotals(rows, id, row);
+        for (int i = 0; i < next_gone; i++) {
+            int index = rows.rows[gone[i]];
+            tmp[segments[index]] -= getNet(purchasers[index], recipients[index], units[index], id);
+        }
+        for (int i = 0; i < next_inserted; i++) {
+            tmp[inserted.get(i).segment] += getNet(inserted.get(i), id);
+        }
+        System.arraycopy(tmp, 0, subtotals, 0, number_of_segments);
+
+        ArrayList<Purchase> page = new ArrayList<Purchase>(Math.min(limit, 1024));
+        while (page.size() < limit) {
+            if (next_inserted < inserted.size() && at[next_inserted] == row) {
+                page.add(inserted.get(next_inserted++));
+            } else if (row >= rows.size) {
+                break;
+            } else if (next_gone < number_gone && gone[next_gone] == row) {
+                next_gone++;
+                row++;
+            } else {
+                page.add(entries[rows.rows[row++]]);
+            }
+        }
+
+        return page.toArray(new Purchase[0]);
+    }
+
+    /**
+     * Gets the number of base rows of a member dated at or before the epoch
+     * second.
+     *
+     * @return A integer value.
+     */
+    private int countMemberRowsUntil(MemberRows rows, long second) {
+        int low = 0;
+        int high = rows.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (seconds[rows.rows[middle]] <= second) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Gets the base rows of a member, indexing the base positions not
+     * scanned yet.
+     *
+     * @return A MemberRows object.
+     */
+    private MemberRows getMemberRows(int id) {
+        MemberRows tmp = member_rows[id];
+        if (tmp == null) {
+            tmp = new MemberRows();
+            tmp.checkpoints = new long[number_of_segments * 4];
+            tmp.subtotals = new long[number_of_segments];
+            member_rows[id] = tmp;
+        }
+
+        for (int i = tmp.scanned; i < size; i++) {
+            if (!isParticipant(i, id)) {
+                continue;
+            }
+
+            if (tmp.size % checkpoint_size == 0) {
+                int offset = tmp.size / checkpoint_size * number_of_segments;
+                if (offset + number_of_segments > tmp.checkpoints.length) {
+                    tmp.checkpoints = Arrays.copyOf(tmp.checkpoints, tmp.checkpoints.length * 2);
+                }
+                System.arraycopy(tmp.subtotals, 0, tmp.checkpoints, offset, number_of_segments);
+            }
+
+            if (tmp.size == tmp.rows.length) {
+                tmp.rows = Arrays.copyOf(tmp.rows, tmp.size * 2);
+            }
+            tmp.rows[tmp.size++] = i;
+            tmp.subtotals[segments[i]] += getNet(purchasers[i], recipients[i], units[i], id);
+        }
+        tmp.scanned = size;
+
+        return tmp;
+    }
+
+    /**
+     * Gets the net subtotals of a member per exchange rate segment before a
+     * base row in minor units.
+     *
+     * @return A long array.
+     */
+    private long[] getMemberSubtotals(MemberRows rows, int id, int row) {
+        long[] subtotals = Arrays.copyOfRange(rows.checkpoints, row / checkpoint_size * number_of_segments,
+                (row / checkpoint_size + 1) * number_of_segments);
+        for (int i = row - row % checkpoint_size; i < row; i++) {
+            int index = rows.rows[i];
+            subtotals[segments[index]] += getNet(purchasers[index], recipients[index], units[index], id);
+        }
+
+        return subtotals;
+    }
+
+    /**
+     * Gets the net amount of an entry for a member in minor units of the
+     * entry currency, the paid amount minus the owed share.
+     *
+     * @return A long value.
+     */
+    static long getNet(Purchase purchase, int id) {
+        return getNet(purchase.purchaser.getId(), purchase.recipients, purchase.amount.getUnits(), id);
+    }
+
+    /**
+     * Gets the net amount of the columns of an entry for a member.
+     *
+     * @return A long value.
+     */
+    private static long getNet(int purchaser, int[] recipients, long units, int id) {
+        long net = purchaser == id ? units : 0;
+
+        int position = Arrays.binarySearch(recipients, id);
+        if (position >= 0) {
+            int parts = recipients.length;
+            long remainder = units % parts;
+            net -= units / parts + (position < Math.abs(remainder) ? Long.signum(remainder) : 0);
+        }
+
+        return net;
+    }
+
+    /**
+     * Gets the number of members the index was built for.
+     *
+     * @return A integer value.
+     */
+    int getNumberOfMembers() {
+        return number_of_members;
+    }
+
+    /**
+     * Gets the number of exchange rate segments the index was built for.
+     *
+     * @return A integer value.
+     */
+    int getNumberOfSegments() {
+        return number_of_segments;
+    }
+
+    /**
+     * Gets the net subtotals of the entries dated before an epoch second in
+     * minor units, indexed by member id times the number of segments plus
+     * segment.
+     *
+     * @return A long array.
+     */
+    synchronized long[] getSubtotals(long until) {
+        int count = countBefore(until);
+        long[] subtotals = checkpoints[count / checkpoint_size].clone();
+        for (int i = count - count % checkpoint_size; i < count; i++) {
+            add(subtotals, purchasers[i], recipients[i], units[i], segments[i], 1);
+        }
+
+        for (int position : removed.values()) {
+            if (position < count) {
+                add(subtotals, purchasers[position], recipients[position], units[position], segments[position], -1);
+            }
+        }
+        for (Purchase entry : added) {
+            if (entry.date.getEpochSecond() >= until) {
+                break;
+            }
+            add(subtotals, entry.purchaser.getId(), entry.recipients, entry.amount.getUnits(), entry.segment, 1);
+        }
+
+        return subtotals;
+    }
+
+    /**
+     * Checks a member to take part in a base entry.
+     *
+     * @return A boolean flag.
+     */
+    private boolean isParticipant(int position, int id) {
+        return purchasers[position] == id || Arrays.binarySearch(recipients[position], id) >= 0;
+    }
+
+    /**
+     * Checks a member to take part in an entry.
+     *
+     * @return A boolean flag.
+     */
+    private static boolean isParticipant(Purchase purchase, int id) {
+        return purchase.purchaser.getId() == id || Arrays.binarySearch(purchase.recipients, id) >= 0;
+    }
+
+    /**
+     * Gets the entries of a type dated from one epoch second until before
+     * another in date order. The iterator works on the state of the index
+     * at its creation.
+     *
+     * @return A Iterator of the given type.
+     */
+    synchronized <T extends Purchase> Iterator<T> iterator(long from, long until, Class<T> type) {
+        Purchase[] base = entries;
+        long[] base_seconds = seconds;
+        int start = countBefore(from);
+        int end = Math.max(start, countBefore(until));
+        Set<Purchase> skipped = Collections.newSetFromMap(new IdentityHashMap<Purchase, Boolean>());
+        skipped.addAll(removed.keySet());
+
+        ArrayList<Purchase> delta = new ArrayList<Purchase>();
+        for (Purchase entry : added) {
+            long second = entry.date.getEpochSecond();
+            if (second >= from && second < until) {
+                delta.add(entry);
+            }
+        }
+
+        return new Iterator<T>() {
+            private int next_base = start;
+            private int next_delta = 0;
+            private Purchase next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                T tmp = type.cast(next);
+                next = advance();
+                return tmp;
+            }
+
+            private Purchase advance() {
+                while (next_base < end || next_delta < delta.size()) {
+                    Purchase tmp;
+                    if (next_base < end && (next_delta == delta.size()
+                            || base_seconds[next_base] <= delta.get(next_delta).date.getEpochSecond())) {
+                        tmp = base[next_base++];
+                        if (skipped.contains(tmp)) {
+                            continue;
+                        }
+                    } else {
+                        tmp = delta.get(next_delta++);
+                    }
+
+                    if (tmp.getClass() == type) {
+                        return tmp;
+                    }
+                }
+
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Merges the delta into the base once it is full.
+     */
+    private void mergeIfFull() {
+        if (removed.size() + added.size() < Math.max(checkpoint_size, 2 * (int) Math.sqrt(size))) {
+            return;
+        }
+
+        int[] gone = new int[removed.size()];
+        int number_gone = 0;
+        for (int position : removed.values()) {
+            gone[number_gone++] = position;
+        }
+        Arrays.sort(gone);
+
+        int first = size;
+        if (number_gone > 0) {
+            first = gone[0];
+        }
+        if (!added.isEmpty()) {
+            first = Math.min(first, countBefore(added.get(0).date.getEpochSecond() + 1));
+        }
+
+        int length = size - number_gone + added.size();
+        if (first == size && length <= entries.length) {
+            // dated at or after the last entry, no iterator reads behind the size
+            for (Purchase entry : added) {
+                fill(size++, entry);
+            }
+        } else {
+            Purchase[] old_entries = entries;
+            long[] old_seconds = seconds;
+            int[] old_purchasers = purchasers;
+            int[][] old_recipients = recipients;
+            long[] old_units = units;
+            int[] old_segments = segments;
+            int old_size = size;
+
+            allocate(length + length / 4 + checkpoint_size);
+            copy(old_entries, old_seconds, old_purchasers, old_recipients, old_units, old_segments, 0, 0, first);
+
+            int next_base = first;
+            int next_gone = 0;
+            int next_added = 0;
+            int position = first;
+            while (position < length) {
+                if (next_gone < number_gone && gone[next_gone] == next_base) {
+                    next_gone++;
+                    next_base++;
+                } else if (next_base < old_size && (next_added == added.size()
+                        || old_seconds[next_base] <= added.get(next_added).date.getEpochSecond())) {
+                    // run of base entries up to the next removed or added entry
+                    int end = next_gone < number_gone ? gone[next_gone] : old_size;
+                    if (next_added < added.size()) {
+                        end = search(old_seconds, next_base, end, added.get(next_added).date.getEpochSecond() + 1);
+                    }
+                    copy(old_entries, old_seconds, old_purchasers, old_recipients, old_units, old_segments,
+                            next_base, position, end - next_base);
+                    position += end - next_base;
+                    next_base = end;
+                } else {
+                    fill(position++, added.get(next_added++));
+                }
+            }
+            size = length;
+
+            // the member rows before the first change stay valid
+            for (int id = 0; id < member_rows.length; id++) {
+                MemberRows rows = member_rows[id];
+                if (rows == null || rows.scanned <= first) {
+                    continue;
+                }
+
+                int low = 0;
+                int high = rows.size;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (rows.rows[middle] < first) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+
+                rows.subtotals = getMemberSubtotals(rows, id, low);
+                rows.size = low;
+                rows.scanned = first;
+            }
+        }
+
+        checkpoints = Arrays.copyOf(checkpoints, entries.length / checkpoint_size + 1);
+        computeCheckpoints(first / checkpoint_size);
+
+        removed.clear();
+        added.clear();
+    }
+
+    /**
+     * Copies a run of entries from the given columns into the base columns.
+     */
+    private void copy(Purchase[] from_entries, long[] from_seconds, int[] from_purchasers, int[][] from_recipients,
+            long[] from_units, int[] from_segments, int from, int to, int length) {
+        System.arraycopy(from_entries, from, entries, to, length);
+        System.arraycopy(from_seconds, from, seconds, to, length);
+        System.arraycopy(from_purchasers, from, purchasers, to, length);
+        System.arraycopy(from_recipients, from, recipients, to, length);
+        System.arraycopy(from_units, from, units, to, length);
+        System.arraycopy(from_segments, from, segments, to, length);
+    }
+
+    /**
+     * Gets the first position of a sorted range dated at or after an epoch
+     * second.
+     *
+     * @return A integer value.
+     */
+    private static int search(long[] seconds, int low, int high, long second) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (seconds[middle] < second) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Sorts entries stable by date. Dates spanning less than 2^31 seconds are
+     * packed with the position into primitive keys, which avoids comparing
+     * through the objects.
+     *
+     * @return A Purchase array.
+     */
+    private static Purchase[] sort(Purchase[] entries) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Purchase entry : entries) {
+            min = Math.min(min, entry.date.getEpochSecond());
+            max = Math.max(max, entry.date.getEpochSecond());
+        }
+
+        if (entries.length == 0 || max - min >= Integer.MAX_VALUE || max - min < 0) {
+            Arrays.sort(entries, Comparator.comparingLong(a -> a.date.getEpochSecond()));
+            return entries;
+        }
+
+        long[] keys = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            keys[i] = (entries[i].date.getEpochSecond() - min) << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        Purchase[] tmp = new Purchase[entries.length];
+        for (int i = 0; i < keys.length; i++) {
+            tmp[i] = entries[(int) keys[i]];
+        }
+
+        return tmp;
+    }
+
+    /**
+     * Adds the net amounts of an entry to the subtotals like Purchase.book,
+     * the shares follow Money.split without allocating.
+     */
+    private void add(long[] subtotals, int purchaser, int[] recipients, long units, int segment, int sign) {
+        int parts = recipients.length;
+        long share = units / parts;
+        long remainder = units % parts;
+
+        subtotals[purchaser * number_of_segments + segment] += sign * units;
+        for (int i = 0; i < parts; i++) {
+            subtotals[recipients[i] * number_of_segments + segment] -= sign
+                    * (share + (i < Math.abs(remainder) ? Long.signum(remainder) : 0));
+        }
+    }
+}
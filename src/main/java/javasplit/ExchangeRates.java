@@ -0,0 +1,209 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javasplit.utils.Currency;
+
+/**
+ * ExchangeRates class holding the date effective exchange rates of a group.
+ *
+ * Every rate point opens a segment, which is the range of dates of one
+ * currency converted with the same rate. Segment 0 is the group currency.
+ * Amounts are aggregated per segment, so a changed rate only changes the
+ * multiplier of its segment.
+ */
+final class ExchangeRates {
+    static final long undated = Long.MIN_VALUE;
+    private Currency currency;
+    private EnumMap<Currency, TreeMap<Long, Integer>> points =
+            new EnumMap<Currency, TreeMap<Long, Integer>>(Currency.class);
+    private int size = 1;
+    private double[] rates = new double[4];
+    private double[] multipliers = new double[4];
+    private double[] latest = new double[Currency.values().length];
+
+    /**
+     * Initialize an ExchangeRates object for a group currency.
+     */
+    ExchangeRates(Currency currency) {
+        this.currency = currency;
+        rates[0] = 1.0;
+        multipliers[0] = 1.0;
+        updateLatest();
+    }
+
+    /**
+     * Gets the minor unit multiplier of the latest rate of a currency, which
+     * is NaN without any rate.
+     *
+     * @return A double value.
+     */
+    double getLatestMultiplier(Currency currency) {
+        return latest[currency.ordinal()];
+    }
+
+    /**
+     * Gets the minor unit multiplier of a segment.
+     *
+     * @return A double value.
+     */
+    double getMultiplier(int segment) {
+        return multipliers[segment];
+    }
+
+    /**
+     * Gets the minor unit multipliers of all segments.
+     *
+     * @return A double array.
+     */
+    double[] getMultipliers() {
+        return multipliers;
+    }
+
+    /**
+     * Gets the epoch second of the rate point following another one.
+     *
+     * @return A long value, Long.MAX_VALUE without a following rate point.
+     */
+    long getNext(Currency currency, long effective) {
+        TreeMap<Long, Integer> tmp = points.get(currency);
+        Long next = tmp == null ? null : tmp.higherKey(effective);
+        return next == null ? Long.MAX_VALUE : next;
+    }
+
+    /**
+     * Gets the rate points by currency and effective epoch second.
+     *
+     * @return A EnumMap of type Currency and TreeMap.
+     */
+    EnumMap<Currency, TreeMap<Long, Double>> getRates() {
+        EnumMap<Currency, TreeMap<Long, Double>> tmp =
+                new EnumMap<Currency, TreeMap<Long, Double>>(Currency.class);
+        for (Map.Entry<Currency, TreeMap<Long, Integer>> entry : points.entrySet()) {
+            TreeMap<Long, Double> tmp_rates = new TreeMap<Long, Double>();
+            for (Map.Entry<Long, Integer> point : entry.getValue().entrySet()) {
+                tmp_rates.put(point.getKey(), rates[point.getValue()]);
+            }
+            tmp.put(entry.getKey(), tmp_rates);
+        }
+
+        return tmp;
+    }
+
+    /**
+     * Gets the segment converting a currency at an epoch second.
+     *
+     * @return A integer value.
+     */
+    int getSegment(Currency currency, long second) {
+        if (currency == this.currency) {
+            return 0;
+        }
+
+        TreeMap<Long, Integer> tmp = points.get(currency);
+        Map.Entry<Long, Integer> point = tmp == null ? null : tmp.floorEntry(second);
+        if (point == null) {
+            throw new RuntimeException("No valid exchange rate found!");
+        }
+
+        return point.getValue();
+    }
+
+    /**
+     * Checks a rate point to be defined.
+     *
+     * @return A boolean flag.
+     */
+    boolean hasPoint(Currency currency, long effective) {
+        TreeMap<Long, Integer> tmp = points.get(currency);
+        return tmp != null && tmp.containsKey(effective);
+    }
+
+    /**
+     * Checks any rate to be defined.
+     *
+     * @return A boolean flag.
+     */
+    boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    /**
+     * Sets the rate of a currency in effect from an epoch second on.
+     *
+     * @return A integer value of the segment, a new one for a new rate point.
+     */
+    int set(Currency currency, double rate, long effective) {
+        if (currency == this.currency) {
+            throw new RuntimeException("Exchange rate for the group currency provided!");
+        }
+
+        TreeMap<Long, Integer> tmp = points.computeIfAbsent(currency, a -> new TreeMap<Long, Integer>());
+        Integer segment = tmp.get(effective);
+        if (segment == null) {
+            if (size == rates.length) {
+                rates = Arrays.copyOf(rates, size * 2);
+                multipliers = Arrays.copyOf(multipliers, size * 2);
+            }
+
+            segment = size++;
+            tmp.put(effective, segment);
+        }
+
+        rates[segment] = rate;
+        multipliers[segment] = this.currency.getScale() / (currency.getScale() * rate);
+        updateLatest();
+
+        return segment;
+    }
+
+    /**
+     * Gets the number of segments.
+     *
+     * @return A integer value.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Rebuilds the multipliers of the latest rates. The group currency is
+     * fixed to 1.0, currencies without rate are NaN.
+     */
+    private void updateLatest() {
+        for (Currency tmp : Currency.values()) {
+            TreeMap<Long, Integer> tmp_points = points.get(tmp);
+            if (tmp == currency) {
+                latest[tmp.ordinal()] = 1.0;
+            } else if (tmp_points == null) {
+                latest[tmp.ordinal()] = Double.NaN;
+            } else {
+                latest[tmp.ordinal()] = multipliers[tmp_points.lastEntry().getValue()];
+            }
+        }
+    }
+}
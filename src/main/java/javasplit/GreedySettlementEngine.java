@@ -0,0 +1,172 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+
+/**
+ * GreedySettlementEngine class pairing the largest debtor with the largest
+ * creditor until all balances are settled.
+ */
+public class GreedySettlementEngine implements SettlementEngine {
+    /**
+     * Gets the list of balances settling the given member balances.
+     *
+     * @return A List of type Balance.
+     */
+    @Override
+    public List<Balance> settle(Group group, List<Member> members, long[] balances) {
+        ArrayList<Balance> pending = new ArrayList<Balance>();
+
+        long[] remaining = new long[balances.length];
+        Heap debtors = new Heap(balances.length, remaining);
+        Heap creditors = new Heap(balances.length, remaining);
+        for (int i = 0; i < balances.length; i++) {
+            remaining[i] = balances[i];
+            if (remaining[i] < 0) {
+                debtors.push(i);
+            } else if (remaining[i] > 0) {
+                creditors.push(i);
+            }
+        }
+
+        while (!debtors.isEmpty() && !creditors.isEmpty()) {
+            int sender = debtors.pop();
+            int receiver = creditors.pop();
+
+            long amount = Math.min(-remaining[sender], remaining[receiver]);
+            remaining[sender] += amount;
+            remaining[receiver] -= amount;
+
+            pending.add(new Balance(group, members.get(sender).getName(),
+                    members.get(receiver).getName(), new Money(amount, group.getCurrency()),
+                    new TimeStamp()));
+
+            if (remaining[sender] < 0) {
+                debtors.push(sender);
+            }
+
+            if (remaining[receiver] > 0) {
+                creditors.push(receiver);
+            }
+        }
+
+        return pending;
+    }
+
+    /**
+     * Binary max heap of member indices ordered by the absolute balance.
+     * Ties are broken by the lower index to keep the result deterministic.
+     */
+    private static final class Heap {
+        private int[] heap;
+        private int size = 0;
+        private long[] balances;
+
+        /**
+         * Initialize a Heap object with a given capacity.
+         */
+        Heap(int capacity, long[] balances) {
+            this.heap = new int[Math.max(capacity, 1)];
+            this.balances = balances;
+        }
+
+        /**
+         * Checks the heap to be empty.
+         *
+         * @return A boolean flag.
+         */
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Removes the index with the largest absolute balance.
+         *
+         * @return A integer value.
+         */
+        int pop() {
+            int top = heap[0];
+            heap[0] = heap[--size];
+
+            int i = 0;
+            while (true) {
+                int left = 2 * i + 1;
+                int right = left + 1;
+                int largest = i;
+                if (left < size && before(heap[left], heap[largest])) {
+                    largest = left;
+                }
+                if (right < size && before(heap[right], heap[largest])) {
+                    largest = right;
+                }
+                if (largest == i) {
+                    break;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+
+            return top;
+        }
+
+        /**
+         * Adds an index to the heap.
+         */
+        void push(int index) {
+            int i = size++;
+            heap[i] = index;
+
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!before(heap[i], heap[parent])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        /**
+         * Checks index a to be ordered before index b.
+         *
+         * @return A boolean flag.
+         */
+        private boolean before(int a, int b) {
+            int cmp = Long.compare(Math.abs(balances[a]), Math.abs(balances[b]));
+            return cmp > 0 || (cmp == 0 && a < b);
+        }
+
+        /**
+         * Swaps two heap positions.
+         */
+        private void swap(int i, int j) {
+            int tmp = heap[i];
+            heap[i] = heap[j];
+            heap[j] = tmp;
+        }
+    }
+}
@@ -21,22 +21,26 @@
 // SOFTWARE.
 package javasplit;
 
+import java.io.BufferedReader;
 import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
+import java.util.TreeMap;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.stream.JsonReader;
 
 import javasplit.utils.Base;
 import javasplit.utils.Currency;
+import javasplit.utils.Money;
 import javasplit.utils.TimeStamp;
 import javasplit.utils.Utils;
 
@@ -47,10 +51,23 @@ public final class Group extends Base {
     private String name;
     private String description;
     private Currency currency;
-    private LinkedHashMap<Currency, Double> exchange_rates = new LinkedHashMap<Currency, Double>();
+    private ExchangeRates exchange_rates;
     private LinkedHashMap<String, Member> members = new LinkedHashMap<String, Member>();
+    private ArrayList<Member> members_by_id = new ArrayList<Member>();
     private ArrayList<Purchase> purchases = new ArrayList<Purchase>();
     private ArrayList<Transfer> transfers = new ArrayList<Transfer>();
+    private int purchases_stale = Integer.MAX_VALUE;
+    private int transfers_stale = Integer.MAX_VALUE;
+    private SettlementEngine settlement_engine = new GreedySettlementEngine();
+    private long[] turnovers = new long[1];
+    private long[] currency_totals = new long[Currency.values().length];
+    private TreeMap<YearMonth, long[]> monthly_turnovers = new TreeMap<YearMonth, long[]>();
+    private long[] balances = null;
+    private DateIndex date_index = null;
+    private TitleIndex title_index = null;
+    private GroupJournal journal = null;
+    private long journal_generation = 0;
+    private BinaryGroupReader history = null;
 
     /**
      * Initialize a Group object with name, description and currency.
@@ -59,81 +76,36 @@ public final class Group extends Base {
         this.name = name;
         this.description = description;
         this.currency = currency;
+        this.exchange_rates = new ExchangeRates(currency);
     }
 
     /**
-     * Initialize a Group object from Json file path string.
+     * Initialize a Group object from a Json or binary (*.jsplit) file path
+     * string, a pending journal log next to the file is replayed read-only.
      */
     public Group(String path) {
+        this(path, true);
+    }
+
+    /**
+     * Initialize a Group object from a Json or binary (*.jsplit) file path
+     * string, optionally replaying a pending journal log read-only.
+     */
+    Group(String path, boolean replay) {
         try {
-            Gson gson = new Gson();
-            JsonReader reader = new JsonReader(new FileReader(path));
-
-            // group
-            Map<?, ?> gson_root = gson.fromJson(reader, Map.class);
-            name = (String) gson_root.get("name");
-            description = (String) gson_root.get("description");
-            currency = Currency.valueOf((String) gson_root.get("currency"));
-            setTime((String) gson_root.get("stamp"));
-
-            // exchange rates
-            Map<?, ?> gson_exchange_rates = (Map<?, ?>) gson_root.get("exchange_rates");
-            for (Currency currency : Currency.values()) {
-                if (gson_exchange_rates.containsKey(currency.name())) {
-                    Double tmp = (Double) gson_exchange_rates.get(currency.name());
-                    exchange_rates.put(currency, tmp);
+            if (BinaryGroupWriter.isBinary(path)) {
+                new BinaryGroupReader(this).read(Path.of(path));
+            } else {
+                try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(path)))) {
+                    new GroupReader(this, reader).read();
                 }
             }
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException(String.format("Failed to read group file \"%s\": %s", path, e.getMessage()), e);
+        }
 
-            // members
-            List<?> gson_members = (List<?>) gson_root.get("members");
-            for (Object gson_member_it : gson_members) {
-                Map<?, ?> gson_member = (Map<?, ?>) gson_member_it;
-
-                String name = (String) gson_member.get("name");
-                Member tmp = addMember(name);
-                tmp.setTime((String) gson_member.get("stamp"));
-            }
-
-            // purchases
-            List<?> gson_purchases = (List<?>) gson_root.get("purchases");
-            for (Object gson_purchase_it : gson_purchases) {
-                Map<?, ?> gson_purchase = (Map<?, ?>) gson_purchase_it;
-
-                String purchaser = (String) gson_purchase.get("purchaser");
-                List<?> recipients = (List<?>) gson_purchase.get("recipients");
-                Double amount = (Double) gson_purchase.get("amount");
-                TimeStamp date = new TimeStamp((String) gson_purchase.get("date"));
-                String title = (String) gson_purchase.get("title");
-                Currency currency = Currency.valueOf((String) gson_purchase.get("currency"));
-
-                Purchase purchase = addPurchase(title, purchaser,
-                        Utils.convertAll(recipients, a -> ((Object) a).toString()),
-                        amount, currency, date);
-                purchase.setTime((String) gson_purchase.get("stamp"));
-            }
-
-            // transfers
-            List<?> gson_transfers = (List<?>) gson_root.get("transfers");
-            for (Object gson_transfers_it : gson_transfers) {
-                Map<?, ?> gson_transfer = (Map<?, ?>) gson_transfers_it;
-
-                String purchaser = (String) gson_transfer.get("purchaser");
-                String recipient = (String) ((List<?>) gson_transfer.get("recipients")).get(0);
-                Double amount = (Double) gson_transfer.get("amount");
-                TimeStamp date = new TimeStamp((String) gson_transfer.get("date"));
-                String title = (String) gson_transfer.get("title");
-                Currency currency = Currency.valueOf((String) gson_transfer.get("currency"));
-
-                Transfer transfer = addTransfer(title, purchaser, recipient,
-                        amount, currency, date);
-                transfer.setTime((String) gson_transfer.get("stamp"));
-            }
-
-            reader.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException();
+        if (replay) {
+            GroupJournal.replay(this, path);
         }
     }
 
@@ -151,8 +123,13 @@ public final class Group extends Base {
             throw new RuntimeException("Duplicate member name provided!");
         }
 
-        Member member = new Member(name);
+        Member member = new Member(this, members_by_id.size(), name);
         members.put(name, member);
+        members_by_id.add(member);
+
+        if (journal != null) {
+            journal.logMember(member);
+        }
 
         return member;
     }
@@ -164,9 +141,23 @@ public final class Group extends Base {
      */
     public Purchase addPurchase(String title, String purchaser, List<String> recipients,
             Double amount, Currency currency, TimeStamp date) {
+        return addPurchase(title, purchaser, recipients, Money.of(amount, currency), date);
+    }
+
+    /**
+     * Adds a purchase with a Money amount to the group.
+     *
+     * @return A Purchase object.
+     */
+    public Purchase addPurchase(String title, String purchaser, List<String> recipients,
+            Money amount, TimeStamp date) {
         Purchase purchase = new Purchase(
-                this, title, purchaser, recipients, amount, currency, date);
-        purchases.add(purchase);
+                this, title, purchaser, recipients, amount, date);
+        add(purchase);
+
+        if (journal != null) {
+            journal.logPurchase(purchase);
+        }
 
         return purchase;
     }
@@ -178,27 +169,366 @@ public final class Group extends Base {
      */
     public Transfer addTransfer(String title, String purchaser, String recipient,
             Double amount, Currency currency, TimeStamp date) {
+        return addTransfer(title, purchaser, recipient, Money.of(amount, currency), date);
+    }
+
+    /**
+     * Adds a transfer with a Money amount to the group.
+     *
+     * @return A Transfer object.
+     */
+    public Transfer addTransfer(String title, String purchaser, String recipient,
+            Money amount, TimeStamp date) {
         Transfer transfer = new Transfer(
-                this, title, purchaser, recipient, amount, currency, date);
-        transfers.add(transfer);
+                this, title, purchaser, recipient, amount, date);
+        add(transfer);
+
+        if (journal != null) {
+            journal.logPurchase(transfer);
+        }
 
         return transfer;
     }
 
     /**
-     * Gets the exchange amount based on given currency.
+     * Appends a purchase or transfer to its list and records the position.
+     */
+    private void add(Purchase purchase) {
+        if (purchase instanceof Transfer) {
+            purchase.position = transfers.size();
+            transfers.add((Transfer) purchase);
+        } else {
+            purchase.position = purchases.size();
+            purchases.add(purchase);
+        }
+    }
+
+    /**
+     * Appends an already linked purchase to the group.
+     */
+    void append(Purchase purchase) {
+        add(purchase);
+    }
+
+    /**
+     * Appends an already linked transfer to the group.
+     */
+    void append(Transfer transfer) {
+        add(transfer);
+    }
+
+    /**
+     * Appends purchases and transfers of a concurrent writer, which were
+     * created unlinked and whose subtotals the writer has summed up: the
+     * turnover per segment, the raw totals per currency and the turnover per
+     * month and segment. The member subtotals are added by the writer. The
+     * entries are appended in order, added to the participations and indices
+     * and logged to an attached journal.
+     */
+    void appendBatch(List<Purchase> entries, long[] batch_turnovers, long[] batch_totals,
+            Map<YearMonth, long[]> batch_monthly) {
+        for (Purchase purchase : entries) {
+            add(purchase);
+            purchase.linkParticipations();
+            index(purchase, 1);
+
+            if (journal != null) {
+                journal.logPurchase(purchase);
+            }
+        }
+
+        for (int i = 0; i < batch_turnovers.length; i++) {
+            if (batch_turnovers[i] != 0) {
+                addTurnoverUnits(i, batch_turnovers[i]);
+            }
+        }
+        for (int i = 0; i < batch_totals.length; i++) {
+            currency_totals[i] += batch_totals[i];
+        }
+        for (Map.Entry<YearMonth, long[]> bucket : batch_monthly.entrySet()) {
+            for (int i = 0; i < bucket.getValue().length; i++) {
+                if (bucket.getValue()[i] != 0) {
+                    addMonthlyUnits(monthly_turnovers, bucket.getKey(), i, bucket.getValue()[i]);
+                }
+            }
+        }
+
+        balances = null;
+    }
+
+    /**
+     * Appends an already linked purchase or transfer of an import to the
+     * group and logs it to an attached journal.
+     */
+    void appendImported(Purchase purchase) {
+        add(purchase);
+
+        if (journal != null) {
+            journal.logPurchase(purchase);
+        }
+    }
+
+    /**
+     * Adds minor units to the monthly turnover bucket of a purchase, buckets
+     * summing up to zero are removed.
+     */
+    private void addMonthlyUnits(TreeMap<YearMonth, long[]> buckets, Purchase purchase, long units) {
+        addMonthlyUnits(buckets, getMonth(purchase.date.getEpochSecond()), purchase.segment, units);
+    }
+
+    /**
+     * Adds minor units of a segment to a monthly turnover bucket.
+     */
+    private void addMonthlyUnits(TreeMap<YearMonth, long[]> buckets, YearMonth month, int segment, long units) {
+        long[] bucket = buckets.get(month);
+        if (bucket == null) {
+            bucket = new long[exchange_rates.size()];
+            buckets.put(month, bucket);
+        } else if (segment >= bucket.length) {
+            bucket = Arrays.copyOf(bucket, exchange_rates.size());
+            buckets.put(month, bucket);
+        }
+
+        bucket[segment] += units;
+        for (long tmp : bucket) {
+            if (tmp != 0) {
+                return;
+            }
+        }
+        buckets.remove(month);
+    }
+
+    /**
+     * Adds minor units to the turnover subtotal of an exchange rate segment.
+     */
+    void addTurnoverUnits(int segment, long units) {
+        if (segment >= turnovers.length) {
+            turnovers = Arrays.copyOf(turnovers, exchange_rates.size());
+        }
+        turnovers[segment] += units;
+    }
+
+    /**
+     * Books a linked or unlinked purchase to the group subtotals and the
+     * aggregates of purchases: turnover, raw totals per currency, spending
+     * per member and turnover per month.
+     */
+    void book(Purchase purchase, int sign) {
+        if (!(purchase instanceof Transfer)) {
+            long units = sign * purchase.amount.getUnits();
+            addTurnoverUnits(purchase.segment, units);
+            currency_totals[purchase.amount.getCurrency().ordinal()] += units;
+            purchase.purchaser.addSpent(purchase.segment, units);
+            addMonthlyUnits(monthly_turnovers, purchase, units);
+        }
+
+        balances = null;
+        index(purchase, sign);
+    }
+
+    /**
+     * Checks the maintained subtotals and aggregates against a full
+     * recompute from the purchases and transfers.
+     */
+    public void checkAggregates() {
+        load();
+
+        int segments = exchange_rates.size();
+        long[] tmp_turnovers = new long[segments];
+        long[] tmp_totals = new long[currency_totals.length];
+        long[][] tmp_paid = new long[members_by_id.size()][segments];
+        long[][] tmp_owed = new long[members_by_id.size()][segments];
+        long[][] tmp_spent = new long[members_by_id.size()][segments];
+        TreeMap<YearMonth, long[]> tmp_monthly = new TreeMap<YearMonth, long[]>();
+
+        ArrayList<Purchase> entries = new ArrayList<Purchase>(purchases);
+        entries.addAll(transfers);
+        for (Purchase entry : entries) {
+            long units = entry.amount.getUnits();
+            Money[] amount_per_member = entry.amount.split(entry.recipients.length);
+            tmp_paid[entry.purchaser.getId()][entry.segment] += units;
+            for (int i = 0; i < entry.recipients.length; i++) {
+                tmp_owed[entry.recipients[i]][entry.segment] += amount_per_member[i].getUnits();
+            }
+
+            if (!(entry instanceof Transfer)) {
+                tmp_turnovers[entry.segment] += units;
+                tmp_totals[entry.amount.getCurrency().ordinal()] += units;
+                tmp_spent[entry.purchaser.getId()][entry.segment] += units;
+                addMonthlyUnits(tmp_monthly, entry, units);
+            }
+        }
+
+        for (int i = 0; i < segments; i++) {
+            if (tmp_turnovers[i] != getTurnoverUnits(i)) {
+                throw new RuntimeException(String.format("Inconsistent turnover of segment %d!", i));
+            }
+
+            for (Member member : members_by_id) {
+                int id = member.getId();
+                if (tmp_paid[id][i] != member.getPaid(i) || tmp_owed[id][i] != member.getOwed(i)
+                        || tmp_spent[id][i] != member.getSpent(i)) {
+                    throw new RuntimeException(String.format("Inconsistent subtotals of member \"%s\"!", member.getName()));
+                }
+            }
+        }
+
+        if (!Arrays.equals(tmp_totals, currency_totals)) {
+            throw new RuntimeException("Inconsistent currency totals!");
+        }
+
+        if (!tmp_monthly.keySet().equals(monthly_turnovers.keySet())) {
+            throw new RuntimeException("Inconsistent months!");
+        }
+        for (Map.Entry<YearMonth, long[]> bucket : tmp_monthly.entrySet()) {
+            long[] tmp = monthly_turnovers.get(bucket.getKey());
+            for (int i = 0; i < segments; i++) {
+                if (bucket.getValue()[i] != (i < tmp.length ? tmp[i] : 0)) {
+                    throw new RuntimeException(String.format("Inconsistent turnover of month %s!", bucket.getKey()));
+                }
+            }
+        }
+
+        if (balances != null && balances.length == members_by_id.size()) {
+            double[] multipliers = exchange_rates.getMultipliers();
+            double[] exact = new double[members_by_id.size()];
+            for (int id = 0; id < exact.length; id++) {
+                for (int i = 0; i < segments; i++) {
+                    exact[id] += (tmp_paid[id][i] - tmp_owed[id][i]) * multipliers[i];
+                }
+            }
+
+            if (!Arrays.equals(balances, Utils.roundPreservingSum(exact))) {
+                throw new RuntimeException("Inconsistent balances!");
+            }
+        }
+    }
+
+    /**
+     * Gets the exchange amount in group currency based on the exchange rates
+     * in effect at the given date.
      *
-     * @return A double value.
+     * @return A Money object.
      */
-    public double exchange(double amount, Currency currency) {
-        if (this.currency.equals(currency)) {
+    public Money exchange(Money amount, TimeStamp date) {
+        return new Money(exchangeUnits(amount.getUnits(), amount.getCurrency(), date.getEpochSecond()),
+                currency);
+    }
+
+    /**
+     * Gets the exchange amount in group currency based on the latest exchange
+     * rates.
+     *
+     * @return A Money object.
+     */
+    public Money exchange(Money amount) {
+        if (currency == amount.getCurrency()) {
             return amount;
         } else {
-            if (!exchange_rates.containsKey(currency)) {
+            if (!hasExchangeRate(amount.getCurrency())) {
                 throw new RuntimeException("No valid exchange rate found!");
             }
-            return amount / exchange_rates.get(currency);
+            return new Money(exchangeUnits(amount.getUnits(), amount.getCurrency()), currency);
+        }
+    }
+
+    /**
+     * Gets the exchange amount in minor units of the group currency based on
+     * minor units of the given currency and the exchange rate in effect at
+     * the given epoch second.
+     *
+     * @return A long value.
+     */
+    public long exchangeUnits(long units, Currency currency, long second) {
+        return exchangeUnits(units, exchange_rates.getSegment(currency, second));
+    }
+
+    /**
+     * Gets the exchange amount in minor units of the group currency based on
+     * minor units of an exchange rate segment, rounded half to even like
+     * Money.of without allocating.
+     *
+     * @return A long value.
+     */
+    long exchangeUnits(long units, int segment) {
+        return (long) Math.rint(units * exchange_rates.getMultiplier(segment));
+    }
+
+    /**
+     * Gets the exchange amount in minor units of the group currency based on
+     * minor units of the given currency and the latest exchange rate. The
+     * exchange rate is not checked, which happens when purchases and
+     * transfers are added. The result is rounded half to even like Money.of.
+     *
+     * @return A long value.
+     */
+    public long exchangeUnits(long units, Currency currency) {
+        return (long) Math.rint(units * exchange_rates.getLatestMultiplier(currency));
+    }
+
+    /**
+     * Gets the balances of all members in minor units of the group currency.
+     * The subtotals are converted by the current exchange rates and rounded
+     * to sum up to zero, the result is cached until the next change. Reads
+     * are O(1) while the cache holds, the first read after a change
+     * recomputes all members in O(members * segments + members log members),
+     * so reads are amortized over the writes. The cache is built
+     * synchronized for concurrent readers.
+     *
+     * @return A long array indexed by member id.
+     */
+    synchronized long[] getBalanceUnits() {
+        if (balances == null || balances.length != members_by_id.size()) {
+            double[] multipliers = exchange_rates.getMultipliers();
+            double[] exact = new double[members_by_id.size()];
+            for (int i = 0; i < exact.length; i++) {
+                exact[i] = members_by_id.get(i).getExactBalance(multipliers);
+            }
+
+            balances = Utils.roundPreservingSum(exact);
+        }
+
+        return balances;
+    }
+
+    /**
+     * Gets the balances of all members in minor units of the group currency
+     * considering the purchases and transfers dated at or before a time
+     * stamp, a date only stamp includes the whole day. The subtotals are
+     * converted by the current exchange rates like getBalanceUnits.
+     *
+     * @return A long array indexed by member id.
+     */
+    long[] getBalanceUnitsAsOf(TimeStamp date) {
+        DateIndex index = getDateIndex();
+        long until = date.getEpochSecond() + (date.isDateOnly() ? 86400 : 1);
+        long[] subtotals = index.getSubtotals(until);
+
+        double[] multipliers = exchange_rates.getMultipliers();
+        int segments = index.getNumberOfSegments();
+        double[] exact = new double[members_by_id.size()];
+        for (int i = 0; i < exact.length; i++) {
+            for (int j = 0; j < segments; j++) {
+                exact[i] += subtotals[i * segments + j] * multipliers[j];
+            }
+        }
+
+        return Utils.roundPreservingSum(exact);
+    }
+
+    /**
+     * Gets the balances of all members by name as of a time stamp.
+     *
+     * @return A Map of type String and Money.
+     */
+    public Map<String, Money> getBalancesAsOf(TimeStamp date) {
+        long[] units = getBalanceUnitsAsOf(date);
+        LinkedHashMap<String, Money> tmp = new LinkedHashMap<String, Money>();
+        for (int i = 0; i < units.length; i++) {
+            tmp.put(members_by_id.get(i).getName(), new Money(units[i], currency));
         }
+
+        return tmp;
     }
 
     /**
@@ -210,6 +540,86 @@ public final class Group extends Base {
         return currency;
     }
 
+    /**
+     * Gets the raw totals of the purchases per currency.
+     *
+     * @return A Map of type Currency and Money.
+     */
+    public Map<Currency, Money> getCurrencyTotals() {
+        load();
+
+        LinkedHashMap<Currency, Money> tmp = new LinkedHashMap<Currency, Money>();
+        for (Currency value : Currency.values()) {
+            if (currency_totals[value.ordinal()] != 0) {
+                tmp.put(value, new Money(currency_totals[value.ordinal()], value));
+            }
+        }
+
+        return tmp;
+    }
+
+    /**
+     * Gets the date sorted index, which is built on first use and for a new
+     * member or exchange rate segment, and kept current on the other changes
+     * by book. It is synchronized for concurrent readers.
+     *
+     * @return A DateIndex object.
+     */
+    private synchronized DateIndex getDateIndex() {
+        load();
+        if (date_index == null || date_index.getNumberOfMembers() != members_by_id.size()
+                || date_index.getNumberOfSegments() != exchange_rates.size()) {
+            date_index = new DateIndex(this, members_by_id.size(), exchange_rates.size());
+        }
+
+        return date_index;
+    }
+
+    /**
+     * Gets the description of the group.
+     *
+     * @return A string.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Gets the exchange rates of the group.
+     *
+     * @return A ExchangeRates object.
+     */
+    ExchangeRates getExchangeRates() {
+        return exchange_rates;
+    }
+
+    /**
+     * Gets the generation of the journal folded into this group.
+     *
+     * @return A long value.
+     */
+    long getJournalGeneration() {
+        return journal_generation;
+    }
+
+    /**
+     * Gets the turnover subtotal of an exchange rate segment in minor units.
+     *
+     * @return A long value.
+     */
+    long getTurnoverUnits(int segment) {
+        return segment < turnovers.length ? turnovers[segment] : 0;
+    }
+
+    /**
+     * Gets a member by id.
+     *
+     * @return A Member object.
+     */
+    public Member getMember(int id) {
+        return members_by_id.get(id);
+    }
+
     /**
      * Gets a member by name.
      *
@@ -223,6 +633,15 @@ public final class Group extends Base {
         return members.get(name);
     }
 
+    /**
+     * Gets the members in id order.
+     *
+     * @return A List of type Member.
+     */
+    public List<Member> getMembers() {
+        return Collections.unmodifiableList(members_by_id);
+    }
+
     /**
      * Gets member names.
      *
@@ -250,54 +669,241 @@ public final class Group extends Base {
         return members.size();
     }
 
+    /**
+     * Gets the number of purchases without loading a deferred history.
+     *
+     * @return A integer value.
+     */
+    public int getNumberOfPurchases() {
+        return (int) ((history == null ? 0 : history.numberOfEntries(false)) + purchases.size());
+    }
+
+    /**
+     * Gets the number of transfers without loading a deferred history.
+     *
+     * @return A integer value.
+     */
+    public int getNumberOfTransfers() {
+        return (int) ((history == null ? 0 : history.numberOfEntries(true)) + transfers.size());
+    }
+
     /**
      * Gets the list of pending balances.
      *
      * @return A List of type Balance.
      */
     public List<Balance> getPendingBalances() {
-        ArrayList<Balance> balances = new ArrayList<Balance>();
-
-        // sorted members
-        List<Member> members = Utils.convertAll(this.members.values(), a -> a);
-        Collections.sort(members, new Comparator<Member>() {
-            @Override
-            public int compare(Member m1, Member m2) {
-                return Double.compare(m1.getBalance(), m2.getBalance());
+        return settlement_engine.settle(this, members_by_id, getBalanceUnits());
+    }
+
+    /**
+     * Gets the list of pending balances as of a time stamp.
+     *
+     * @return A List of type Balance.
+     */
+    public List<Balance> getPendingBalancesAsOf(TimeStamp date) {
+        return settlement_engine.settle(this, members_by_id, getBalanceUnitsAsOf(date));
+    }
+
+    /**
+     * Gets the turnover per month of the purchase dates in group currency,
+     * converted by the current exchange rates.
+     *
+     * @return A Map of type YearMonth and Money.
+     */
+    public Map<YearMonth, Money> getMonthlyTurnovers() {
+        load();
+
+        LinkedHashMap<YearMonth, Money> tmp = new LinkedHashMap<YearMonth, Money>();
+        for (Map.Entry<YearMonth, long[]> bucket : monthly_turnovers.entrySet()) {
+            double turnover = 0.0;
+            for (int i = 0; i < bucket.getValue().length; i++) {
+                turnover += bucket.getValue()[i] * exchange_rates.getMultiplier(i);
             }
-        });
+            tmp.put(bucket.getKey(), new Money((long) Math.rint(turnover), currency));
+        }
 
-        LinkedHashMap<Member, Double> bal_add = new LinkedHashMap<Member, Double>();
-        for (Member member : members) {
-            bal_add.put(member, 0.0);
+        return tmp;
+    }
+
+    /**
+     * Gets the month of an epoch second.
+     *
+     * @return A YearMonth object.
+     */
+    static YearMonth getMonth(long second) {
+        return YearMonth.from(LocalDate.ofEpochDay(Math.floorDiv(second, 86400)));
+    }
+
+    /**
+     * Gets the minor unit multiplier of an exchange rate segment.
+     *
+     * @return A double value.
+     */
+    double getMultiplier(int segment) {
+        return exchange_rates.getMultiplier(segment);
+    }
+
+    /**
+     * Gets the exchange rate segment converting a currency at an epoch second.
+     *
+     * @return A integer value.
+     */
+    int getSegment(Currency currency, long second) {
+        return exchange_rates.getSegment(currency, second);
+    }
+
+    /**
+     * Gets the exchange rate segment converting a currency at a date.
+     *
+     * @return A integer value.
+     */
+    int getSegment(Currency currency, TimeStamp date) {
+        return exchange_rates.getSegment(currency, date.getEpochSecond());
+    }
+
+    /**
+     * Gets a purchase by its position. A deferred history with a page index
+     * stays deferred and returns a decoded copy for reading, edits take the
+     * purchases of getPurchases().
+     *
+     * @return A Purchase object.
+     */
+    public Purchase getPurchase(int index) {
+        if (history != null && history.isPaged()) {
+            long stored = history.numberOfEntries(false);
+            return index < stored ? history.readEntry(false, index) : purchases.get((int) (index - stored));
         }
 
-        for (Member sender : members) {
-            ListIterator<Member> listIterator = members.listIterator(members.size());
+        load();
+        return purchases.get(index);
+    }
+
+    /**
+     * Gets the purchases.
+     *
+     * @return A List of type Purchase.
+     */
+    public List<Purchase> getPurchases() {
+        load();
+        return Collections.unmodifiableList(purchases);
+    }
+
+    /**
+     * Gets the purchases dated from one time stamp until before another in
+     * date order.
+     *
+     * @return A Iterable of type Purchase.
+     */
+    public Iterable<Purchase> getPurchasesBetween(TimeStamp from, TimeStamp until) {
+        return () -> getDateIndex().iterator(from.getEpochSecond(), until.getEpochSecond(), Purchase.class);
+    }
+
+    /**
+     * Gets the engine used to compute the pending balances.
+     *
+     * @return A SettlementEngine object.
+     */
+    public SettlementEngine getSettlementEngine() {
+        return settlement_engine;
+    }
 
-            // Iterate in reverse.
-            while (listIterator.hasPrevious()) {
-                Member receiver = listIterator.previous();
-                if (sender == receiver)
-                    continue;
+    /**
+     * Gets a page of the date ordered statement of a member starting at a
+     * row cursor. The running balance starts from the stored checkpoint and
+     * is converted by the current exchange rates.
+     *
+     * @return A Statement object.
+     */
+    Statement getStatement(Member member, int cursor, int limit) {
+        DateIndex index = getDateIndex();
+        int id = member.getId();
+        int count = index.countMemberRows(id);
+        if (cursor < 0 || cursor > count || limit <= 0) {
+            throw new RuntimeException("Invalid statement cursor or limit!");
+        }
 
-                Double sender_balance = sender.getBalance() + bal_add.get(sender);
-                Double receiver_balance = receiver.getBalance() + bal_add.get(receiver);
+        double[] multipliers = exchange_rates.getMultipliers();
+        long[] subtotals = new long[index.getNumberOfSegments()];
+        Purchase[] entries = index.getMemberPage(id, cursor, limit, subtotals);
+        int end = cursor + entries.length;
+        ArrayList<Statement.Row> tmp = new ArrayList<Statement.Row>(entries.length);
+        for (Purchase entry : entries) {
+            long net = DateIndex.getNet(entry, id);
+            subtotals[entry.segment] += net;
 
-                if (receiver_balance > 0.0) {
-                    Double bal = Math.min(Math.abs(sender_balance), receiver_balance);
-                    bal_add.put(sender, bal_add.get(sender) + bal);
-                    bal_add.put(receiver, bal_add.get(receiver) - bal);
+            double balance = 0.0;
+            for (int j = 0; j < subtotals.length; j++) {
+                balance += subtotals[j] * multipliers[j];
+            }
 
-                    Balance balance = new Balance(
-                            this, sender.getName(), receiver.getName(),
-                            bal, currency, new TimeStamp());
-                    balances.add(balance);
+            String counterpart = entry.purchaser.getName();
+            if (entry.purchaser == member) {
+                StringBuilder names = new StringBuilder();
+                for (int recipient : entry.recipients) {
+                    if (recipient != id) {
+                        names.append(names.length() == 0 ? "" : ", ").append(getMember(recipient).getName());
+                    }
                 }
+                counterpart = names.toString();
             }
+
+            tmp.add(new Statement.Row(entry.date, entry.title, counterpart,
+                    new Money((long) Math.rint(net * multipliers[entry.segment]), currency),
+                    new Money((long) Math.rint(balance), currency), entry instanceof Transfer));
         }
 
-        return balances;
+        return new Statement(tmp, end < count ? end : -1);
+    }
+
+    /**
+     * Gets the title index, which is built on the first search and
+     * synchronized for concurrent readers.
+     *
+     * @return A TitleIndex object.
+     */
+    private synchronized TitleIndex getTitleIndex() {
+        load();
+        if (title_index == null) {
+            title_index = new TitleIndex(purchases);
+        }
+
+        return title_index;
+    }
+
+    /**
+     * Gets a transfer by its position like getPurchase.
+     *
+     * @return A Transfer object.
+     */
+    public Transfer getTransfer(int index) {
+        if (history != null && history.isPaged()) {
+            long stored = history.numberOfEntries(true);
+            return index < stored ? (Transfer) history.readEntry(true, index) : transfers.get((int) (index - stored));
+        }
+
+        load();
+        return transfers.get(index);
+    }
+
+    /**
+     * Gets the transfers.
+     *
+     * @return A List of type Transfer.
+     */
+    public List<Transfer> getTransfers() {
+        load();
+        return Collections.unmodifiableList(transfers);
+    }
+
+    /**
+     * Gets the transfers dated from one time stamp until before another in
+     * date order.
+     *
+     * @return A Iterable of type Transfer.
+     */
+    public Iterable<Transfer> getTransfersBetween(TimeStamp from, TimeStamp until) {
+        return () -> getDateIndex().iterator(from.getEpochSecond(), until.getEpochSecond(), Transfer.class);
     }
 
     /**
@@ -307,15 +913,160 @@ public final class Group extends Base {
      */
     public double getTurnover() {
         double turnover = 0.0;
-        for (Purchase purchase : this.purchases) {
-            turnover += purchase.getAmount();
+        for (int i = 0; i < turnovers.length; i++) {
+            turnover += turnovers[i] * exchange_rates.getMultiplier(i);
+        }
+
+        return new Money((long) Math.rint(turnover), currency).toDouble();
+    }
+
+    /**
+     * Checks an exchange rate to be defined for the given currency.
+     *
+     * @return A boolean flag.
+     */
+    public boolean hasExchangeRate(Currency currency) {
+        return !Double.isNaN(exchange_rates.getLatestMultiplier(currency));
+    }
+
+    /**
+     * Checks a member with the given name to exist.
+     *
+     * @return A boolean flag.
+     */
+    public boolean hasMember(String name) {
+        return members.containsKey(name);
+    }
+
+    /**
+     * Imports purchases and transfers from CSV with a header row or from
+     * Json lines, invalid rows are skipped and reported.
+     *
+     * @return A PurchaseImporter.Result object.
+     */
+    public PurchaseImporter.Result importPurchases(Reader reader) {
+        try {
+            return new PurchaseImporter(this).read(reader);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to import purchases: %s", e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Adds a purchase to or removes it from the built title and date
+     * indices.
+     */
+    private void index(Purchase purchase, int sign) {
+        if (title_index != null && !(purchase instanceof Transfer)) {
+            if (sign > 0) {
+                title_index.add(purchase);
+            } else {
+                title_index.remove(purchase);
+            }
+        }
+
+        if (date_index != null && sign > 0) {
+            date_index.addEntry(purchase);
+        } else if (date_index != null && !date_index.removeEntry(purchase)) {
+            date_index = null;
+        }
+    }
+
+    /**
+     * Gets the position of a purchase or transfer in its list from the
+     * recorded position. The positions behind a removal are renumbered on
+     * the next lookup only, so a lookup is O(1) amortized over removals.
+     *
+     * @return A integer value, or -1 if not part of the group.
+     */
+    private int indexOf(Purchase purchase) {
+        boolean transfer = purchase instanceof Transfer;
+        List<? extends Purchase> list = transfer ? transfers : purchases;
+        int stale = transfer ? transfers_stale : purchases_stale;
+        if (purchase.position >= stale) {
+            for (int i = stale; i < list.size(); i++) {
+                list.get(i).position = i;
+            }
+            if (transfer) {
+                transfers_stale = Integer.MAX_VALUE;
+            } else {
+                purchases_stale = Integer.MAX_VALUE;
+            }
+        }
+
+        int index = purchase.position;
+        return index >= 0 && index < list.size() && list.get(index) == purchase ? index : -1;
+    }
+
+    /**
+     * Checks the purchase history to be loaded, which is deferred for
+     * binary group files until it is needed.
+     *
+     * @return A boolean flag.
+     */
+    public boolean isLoaded() {
+        return history == null;
+    }
+
+    /**
+     * Loads the purchase history of a lazily opened group. Purchases added
+     * in the meantime are linked again after the history to keep the order
+     * of the lists and participations.
+     */
+    void load() {
+        if (history == null) {
+            return;
+        }
+
+        BinaryGroupReader reader = history;
+        history = null;
+        title_index = null;
+        date_index = null;
+
+        ArrayList<Purchase> added_purchases = purchases;
+        ArrayList<Transfer> added_transfers = transfers;
+        for (Purchase purchase : added_purchases) {
+            purchase.unlink();
+        }
+        for (Transfer transfer : added_transfers) {
+            transfer.unlink();
+        }
+
+        purchases = new ArrayList<Purchase>();
+        transfers = new ArrayList<Transfer>();
+        purchases_stale = Integer.MAX_VALUE;
+        transfers_stale = Integer.MAX_VALUE;
+        for (Member member : members_by_id) {
+            member.resetSubtotals();
+        }
+        turnovers = new long[exchange_rates.size()];
+        currency_totals = new long[Currency.values().length];
+        monthly_turnovers.clear();
+
+        reader.readHistory();
+
+        for (Purchase purchase : added_purchases) {
+            purchase.link();
+            add(purchase);
         }
+        for (Transfer transfer : added_transfers) {
+            transfer.link();
+            add(transfer);
+        }
+        balances = null;
+    }
 
-        return turnover;
+    /**
+     * Gets the number of exchange rate segments.
+     *
+     * @return A integer value.
+     */
+    int numberOfSegments() {
+        return exchange_rates.size();
     }
 
     /**
-     * Prints the group objects.
+     * Prints the group objects, a deferred history is paged through.
      */
     public void print() {
         int length = 80;
@@ -334,11 +1085,16 @@ public final class Group extends Base {
         if (!exchange_rates.isEmpty()) {
             System.out.println(rule);
             System.out.println("Exchange rates:");
-            for (Map.Entry<Currency, Double> exchange_rate : exchange_rates.entrySet()) {
-                System.out.println(String.format(" * 1%s -> %.2f%s", currency, exchange_rate.getValue(),
-                        exchange_rate.getKey()));
+            for (Map.Entry<Currency, TreeMap<Long, Double>> exchange_rate : exchange_rates.getRates().entrySet()) {
+                for (Map.Entry<Long, Double> point : exchange_rate.getValue().entrySet()) {
+                    String tmp = String.format(" * 1%s -> %.2f%s", currency, point.getValue(),
+                            exchange_rate.getKey());
+                    if (point.getKey() != ExchangeRates.undated) {
+                        tmp = String.format("%s (from %s)", tmp, TimeStamp.ofEpochSecond(point.getKey()));
+                    }
+                    System.out.println(tmp);
+                }
             }
-
         }
 
         System.out.println(rule);
@@ -349,14 +1105,14 @@ public final class Group extends Base {
 
         System.out.println(rule);
         System.out.println("Purchases:");
-        for (Purchase purchase : purchases) {
-            System.out.println(String.format(" * %s", purchase));
+        for (int i = 0; i < getNumberOfPurchases(); i++) {
+            System.out.println(String.format(" * %s", getPurchase(i)));
         }
 
         System.out.println(rule);
         System.out.println("Transfers:");
-        for (Transfer transfer : transfers) {
-            System.out.println(String.format(" * %s", transfer));
+        for (int i = 0; i < getNumberOfTransfers(); i++) {
+            System.out.println(String.format(" * %s", getTransfer(i)));
         }
 
         System.out.println(rule);
@@ -368,29 +1124,255 @@ public final class Group extends Base {
         System.out.println(mainrule);
     }
 
+    /**
+     * Removes a purchase from the group. The purchase is found by its
+     * recorded position, the list keeps its order by shifting the later
+     * entries.
+     */
+    public void removePurchase(Purchase purchase) {
+        load();
+        int index = indexOf(purchase);
+        if (index < 0 || purchase instanceof Transfer) {
+            throw new RuntimeException("Purchase not part of the group!");
+        }
+
+        purchase.unlink();
+        purchases.remove(index);
+        purchase.position = -1;
+        purchases_stale = Math.min(purchases_stale, index);
+
+        if (journal != null) {
+            journal.logRemoval(purchase, index);
+        }
+    }
+
+    /**
+     * Removes a transfer from the group like removePurchase.
+     */
+    public void removeTransfer(Transfer transfer) {
+        load();
+        int index = indexOf(transfer);
+        if (index < 0) {
+            throw new RuntimeException("Transfer not part of the group!");
+        }
+
+        transfer.unlink();
+        transfers.remove(index);
+        transfer.position = -1;
+        transfers_stale = Math.min(transfers_stale, index);
+
+        if (journal != null) {
+            journal.logRemoval(transfer, index);
+        }
+    }
+
+    /**
+     * Sets the currency of a group without purchases and resets the
+     * exchange rates.
+     */
+    void setCurrency(Currency currency) {
+        this.currency = currency;
+        this.exchange_rates = new ExchangeRates(currency);
+    }
+
+    /**
+     * Sets the description of the group.
+     */
+    void setDescription(String description) {
+        this.description = description;
+    }
+
     /**
      * Sets the exchange rate for a given currency
      */
     public void setExchangeRate(Currency currency, Double rate) {
-        exchange_rates.put(currency, rate);
+        setExchangeRate(currency, rate, ExchangeRates.undated);
+    }
+
+    /**
+     * Sets the exchange rate for a given currency in effect from a date on.
+     */
+    public void setExchangeRate(Currency currency, Double rate, TimeStamp effective) {
+        setExchangeRate(currency, rate, effective.getEpochSecond());
     }
 
     /**
-     * Saves the group dictionary to a path.
+     * Sets the exchange rate for a given currency in effect from an epoch
+     * second on. A changed rate only changes the multiplier of its segment,
+     * a new rate point moves the purchases up to the next rate point to a
+     * new segment.
+     */
+    private void setExchangeRate(Currency currency, Double rate, long effective) {
+        if (rate == null || !(rate > 0.0) || rate.isInfinite()) {
+            throw new RuntimeException("Invalid exchange rate provided!");
+        }
+
+        // a new rate point may move purchases of the history
+        if (!exchange_rates.hasPoint(currency, effective)) {
+            load();
+        }
+
+        int size = exchange_rates.size();
+        long end = exchange_rates.getNext(currency, effective);
+        int segment = exchange_rates.set(currency, rate, effective);
+
+        if (exchange_rates.size() > size) {
+            // the new segment rebuilds the date index anyway
+            date_index = null;
+
+            ArrayList<Purchase> affected = new ArrayList<Purchase>();
+            for (Purchase purchase : purchases) {
+                if (purchase.isAffected(currency, effective, end)) {
+                    affected.add(purchase);
+                }
+            }
+
+            for (Transfer transfer : transfers) {
+                if (transfer.isAffected(currency, effective, end)) {
+                    affected.add(transfer);
+                }
+            }
+
+            for (Purchase purchase : affected) {
+                purchase.book(-1);
+                purchase.segment = segment;
+                purchase.book(1);
+            }
+        }
+
+        balances = null;
+
+        if (journal != null) {
+            journal.logExchangeRate(currency, rate, effective);
+        }
+    }
+
+    /**
+     * Sets the reader of the deferred purchase history.
+     */
+    void setHistory(BinaryGroupReader history) {
+        this.history = history;
+    }
+
+    /**
+     * Sets the journal receiving the changes of the group.
+     */
+    void setJournal(GroupJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the generation of the journal folded into this group.
+     */
+    void setJournalGeneration(long journal_generation) {
+        this.journal_generation = journal_generation;
+    }
+
+    /**
+     * Sets the name of the group.
+     */
+    void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Sets the engine used to compute the pending balances.
+     */
+    public void setSettlementEngine(SettlementEngine settlement_engine) {
+        this.settlement_engine = settlement_engine;
+    }
+
+    /**
+     * Saves the group to a pretty printed Json file.
      */
     public void save(String path) {
+        save(path, true);
+    }
+
+    /**
+     * Saves the group to a Json file, optionally pretty printed, or to a
+     * binary file for the *.jsplit extension. Saving to the snapshot of the
+     * attached journal compacts it, saving over another journaled snapshot
+     * writes the next generation and removes its log.
+     */
+    public void save(String path, boolean pretty) {
+        if (journal != null && journal.isSnapshot(path)) {
+            journal.compact(pretty);
+            return;
+        }
+
+        long generation = GroupJournal.readLogGeneration(path);
+        if (generation >= 0) {
+            journal_generation = Math.max(journal_generation, generation) + 1;
+        }
+
+        write(path, pretty);
+
+        if (generation >= 0) {
+            GroupJournal.remove(path);
+        }
+    }
+
+    /**
+     * Writes the group to a Json file, optionally pretty printed, or to a
+     * binary file for the *.jsplit extension.
+     */
+    void write(String path, boolean pretty) {
         try {
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            FileWriter writer = new FileWriter(path);
-            gson.toJson(toDict(), writer);
-            writer.flush();
-            writer.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException();
+            if (BinaryGroupWriter.isBinary(path)) {
+                new BinaryGroupWriter(this).write(Path.of(path));
+            } else {
+                new GroupWriter(this, pretty).write(Path.of(path));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to write group file \"%s\": %s", path, e.getMessage()), e);
         }
     }
 
+    /**
+     * Updates a purchase of the group.
+     *
+     * @return A Purchase object.
+     */
+    public Purchase updatePurchase(Purchase purchase, String title, String purchaser,
+            List<String> recipients, Money amount, TimeStamp date) {
+        load();
+        if (purchase.group != this || purchase instanceof Transfer
+                || !purchase.purchaser.hasParticipation(purchase)) {
+            throw new RuntimeException("Purchase not part of the group!");
+        }
+
+        purchase.update(title, purchaser, recipients, amount, date);
+
+        if (journal != null) {
+            journal.logUpdate(purchase, indexOf(purchase));
+        }
+
+        return purchase;
+    }
+
+    /**
+     * Searches the purchases by title, see searchPurchases with member
+     * filters.
+     *
+     * @return A List of type Purchase.
+     */
+    public List<Purchase> searchPurchases(String query) {
+        return searchPurchases(query, -1, -1);
+    }
+
+    /**
+     * Searches the purchases whose title contains all terms of the query,
+     * optionally paid by a purchaser and shared with a recipient given by
+     * member id (-1 for any). A term ending with * matches words starting
+     * with it. The result is ordered by date.
+     *
+     * @return A List of type Purchase.
+     */
+    public List<Purchase> searchPurchases(String query, int purchaser, int recipient) {
+        return getTitleIndex().search(query, purchaser, recipient);
+    }
+
     /**
      * Serializes the object.
      *
@@ -398,9 +1380,23 @@ public final class Group extends Base {
      */
     @Override
     protected LinkedHashMap<String, Object> serialize() {
+        load();
+
         LinkedHashMap<String, Double> exchange_rates = new LinkedHashMap<String, Double>();
-        for (Map.Entry<Currency, Double> entry : this.exchange_rates.entrySet()) {
-            exchange_rates.put(entry.getKey().name(), entry.getValue());
+        LinkedHashMap<String, Object> exchange_rate_history = new LinkedHashMap<String, Object>();
+        for (Map.Entry<Currency, TreeMap<Long, Double>> entry : this.exchange_rates.getRates().entrySet()) {
+            LinkedHashMap<String, Double> history = new LinkedHashMap<String, Double>();
+            for (Map.Entry<Long, Double> point : entry.getValue().entrySet()) {
+                if (point.getKey() == ExchangeRates.undated) {
+                    exchange_rates.put(entry.getKey().name(), point.getValue());
+                } else {
+                    history.put(TimeStamp.ofEpochSecond(point.getKey()).toString(), point.getValue());
+                }
+            }
+
+            if (!history.isEmpty()) {
+                exchange_rate_history.put(entry.getKey().name(), history);
+            }
         }
 
         LinkedHashMap<String, Object> hash_map = new LinkedHashMap<String, Object>();
@@ -411,6 +1407,9 @@ public final class Group extends Base {
         hash_map.put("purchases", Utils.convertAll(purchases, a -> a.toDict()));
         hash_map.put("transfers", Utils.convertAll(transfers, a -> a.toDict()));
         hash_map.put("exchange_rates", exchange_rates);
+        if (!exchange_rate_history.isEmpty()) {
+            hash_map.put("exchange_rate_history", exchange_rate_history);
+        }
 
         return hash_map;
     }
@@ -0,0 +1,634 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import javasplit.utils.Currency;
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+
+/**
+ * Append-only journal of group changes next to a Json or binary group
+ * snapshot.
+ *
+ * Each change of the attached group is appended as a compact Json line to
+ * "<snapshot>.log". The records are buffered and written and synced
+ * together on commit (group commit), which happens automatically for every
+ * full batch and on close. Loading replays the snapshot and the log, and
+ * compaction folds the log back into a new snapshot.
+ *
+ * The log starts with a header holding the journal generation, which is
+ * also stored in the snapshot. A log of an older generation has already
+ * been folded into the snapshot and is discarded on open, so a compaction
+ * interrupted after writing the snapshot does not replay records twice.
+ *
+ * Opening the snapshot as a plain Group replays a pending log read-only,
+ * and Group.save to a journaled path folds the log: it writes the snapshot
+ * with the next generation and removes the log. A journal opened on the
+ * same path elsewhere has to be closed before such a save.
+ */
+public final class GroupJournal implements Closeable {
+    private static final int batch_size = 256;
+    private static final long compaction_size = 100000;
+
+    private Path snapshot;
+    private Path log;
+    private Group group;
+    private FileChannel channel;
+    private StringWriter pending = new StringWriter();
+    private int pending_records = 0;
+    private long records = 0;
+
+    /**
+     * Initialize a GroupJournal object with snapshot path and group.
+     */
+    private GroupJournal(Path snapshot, Group group) {
+        this.snapshot = snapshot;
+        this.log = getLog(snapshot);
+        this.group = group;
+    }
+
+    /**
+     * Closes the journal after committing the pending records, the log is
+     * compacted if it grew large.
+     */
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+
+        if (records + pending_records >= compaction_size) {
+            compact();
+        } else {
+            commit();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to close journal \"%s\": %s", log, e.getMessage()), e);
+        }
+        channel = null;
+        group.setJournal(null);
+    }
+
+    /**
+     * Writes and syncs the pending records to the log.
+     */
+    public void commit() {
+        if (pending_records == 0) {
+            return;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to write journal \"%s\": %s", log, e.getMessage()), e);
+        }
+
+        records += pending_records;
+        pending.getBuffer().setLength(0);
+        pending_records = 0;
+    }
+
+    /**
+     * Folds the log into a new snapshot and truncates the log.
+     */
+    public void compact() {
+        compact(true);
+    }
+
+    /**
+     * Folds the log into a new snapshot, optionally pretty printed, and
+     * truncates the log.
+     */
+    void compact(boolean pretty) {
+        commit();
+
+        long generation = group.getJournalGeneration();
+        group.setJournalGeneration(generation + 1);
+        try {
+            group.write(snapshot.toString(), pretty);
+        } catch (RuntimeException e) {
+            group.setJournalGeneration(generation);
+            throw new RuntimeException(String.format("Failed to compact journal \"%s\": %s", log, e.getMessage()), e);
+        }
+
+        reset();
+    }
+
+    /**
+     * Creates a journal for a new group by writing its snapshot.
+     *
+     * @return A GroupJournal object.
+     */
+    public static GroupJournal create(String path, Group group) {
+        GroupJournal journal = new GroupJournal(Path.of(path), group);
+        group.save(path);
+        journal.openChannel();
+        journal.reset();
+        group.setJournal(journal);
+
+        return journal;
+    }
+
+    /**
+     * Gets the group attached to the journal.
+     *
+     * @return A Group object.
+     */
+    public Group getGroup() {
+        return group;
+    }
+
+    /**
+     * Opens the journal of an existing snapshot and replays the log.
+     *
+     * @return A GroupJournal object.
+     */
+    public static GroupJournal open(String path) {
+        GroupJournal journal = new GroupJournal(Path.of(path), new Group(path, false));
+        journal.replay();
+        journal.group.setJournal(journal);
+
+        return journal;
+    }
+
+    /**
+     * Gets the log path of a snapshot path.
+     *
+     * @return A Path object.
+     */
+    static Path getLog(Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + ".log");
+    }
+
+    /**
+     * Checks the journal to belong to a snapshot path.
+     *
+     * @return A boolean flag.
+     */
+    boolean isSnapshot(String path) {
+        return snapshot.toAbsolutePath().normalize().equals(Path.of(path).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Reads the generation of the log of a snapshot path.
+     *
+     * @return A long value, 0 for a log without header or -1 for no log.
+     */
+    static long readLogGeneration(String path) {
+        Path log = getLog(Path.of(path));
+        if (!Files.exists(log)) {
+            return -1;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            return line == null ? 0 : Math.max(readGeneration(line), 0);
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Replays the log of a snapshot path read-only onto a group read from
+     * the snapshot, a torn last line is ignored.
+     */
+    static void replay(Group group, String path) {
+        GroupJournal journal = new GroupJournal(Path.of(path), group);
+        if (!Files.exists(journal.log)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(journal.log, StandardOpenOption.READ)) {
+            journal.channel = channel;
+            journal.read();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to open journal \"%s\": %s", journal.log, e.getMessage()), e);
+        } finally {
+            journal.channel = null;
+        }
+    }
+
+    /**
+     * Removes the log of a snapshot path.
+     */
+    static void remove(String path) {
+        Path log = getLog(Path.of(path));
+        try {
+            Files.deleteIfExists(log);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to remove journal \"%s\": %s", log, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Gets the number of records in the log including pending ones.
+     *
+     * @return A long value.
+     */
+    public long size() {
+        return records + pending_records;
+    }
+
+    /**
+     * Appends an exchange rate record.
+     */
+    void logExchangeRate(Currency currency, double rate, long effective) {
+        JsonWriter writer = record("rate");
+        try {
+            writer.name("currency").value(currency.name());
+            writer.name("rate").value(rate);
+            if (effective != ExchangeRates.undated) {
+                writer.name("effective").value(TimeStamp.ofEpochSecond(effective).toString());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        append(writer);
+    }
+
+    /**
+     * Appends a member record.
+     */
+    void logMember(Member member) {
+        JsonWriter writer = record("member");
+        try {
+            writer.name("name").value(member.getName());
+            writer.name("stamp").value(member.getStamp().toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        append(writer);
+    }
+
+    /**
+     * Appends a purchase or transfer record.
+     */
+    void logPurchase(Purchase purchase) {
+        JsonWriter writer = record(purchase instanceof Transfer ? "transfer" : "purchase");
+        try {
+            GroupWriter.writePurchaseFields(writer, purchase);
+            writer.name("stamp").value(purchase.getStamp().toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        append(writer);
+    }
+
+    /**
+     * Appends a purchase or transfer removal record.
+     */
+    void logRemoval(Purchase purchase, int index) {
+        JsonWriter writer = record(purchase instanceof Transfer ? "remove_transfer" : "remove_purchase");
+        try {
+            writer.name("index").value(index);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        append(writer);
+    }
+
+    /**
+     * Appends a purchase update record.
+     */
+    void logUpdate(Purchase purchase, int index) {
+        JsonWriter writer = record("update");
+        try {
+            writer.name("index").value(index);
+            GroupWriter.writePurchaseFields(writer, purchase);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        append(writer);
+    }
+
+    /**
+     * Finishes a record and commits if the batch is full.
+     */
+    private void append(JsonWriter writer) {
+        try {
+            writer.endObject();
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        pending.write('\n');
+        pending_records++;
+
+        if (pending_records >= batch_size) {
+            commit();
+        }
+    }
+
+    /**
+     * Applies a single log record to the group.
+     */
+    private void apply(String line) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(line));
+        String op = null;
+        String name = null;
+        String stamp = null;
+        String title = null;
+        String purchaser = null;
+        List<String> recipients = new ArrayList<String>();
+        double amount = Double.NaN;
+        double rate = Double.NaN;
+        Currency currency = null;
+        String date = null;
+        String effective = null;
+        int index = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "op":
+                    op = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "stamp":
+                    stamp = reader.nextString();
+                    break;
+                case "title":
+                    title = reader.nextString();
+                    break;
+                case "purchaser":
+                    purchaser = reader.nextString();
+                    break;
+                case "recipients":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        recipients.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    break;
+                case "amount":
+                    amount = reader.nextDouble();
+                    break;
+                case "currency":
+                    currency = Currency.valueOf(reader.nextString());
+                    break;
+                case "date":
+                    date = reader.nextString();
+                    break;
+                case "rate":
+                    rate = reader.nextDouble();
+                    break;
+                case "effective":
+                    effective = reader.nextString();
+                    break;
+                case "index":
+                    index = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (op == null) {
+            throw new RuntimeException("Missing record type!");
+        }
+
+        switch (op) {
+            case "journal":
+                throw new RuntimeException("Unexpected journal header!");
+            case "member":
+                group.addMember(name).setTime(stamp);
+                break;
+            case "purchase":
+                group.addPurchase(title, purchaser, recipients, Money.of(amount, currency),
+                        new TimeStamp(date)).setTime(stamp);
+                break;
+            case "transfer":
+                group.addTransfer(title, purchaser, recipients.get(0), Money.of(amount, currency),
+                        new TimeStamp(date)).setTime(stamp);
+                break;
+            case "rate":
+                if (effective == null) {
+                    group.setExchangeRate(currency, rate);
+                } else {
+                    group.setExchangeRate(currency, rate, new TimeStamp(effective));
+                }
+                break;
+            case "remove_purchase":
+                group.removePurchase(group.getPurchases().get(index));
+                break;
+            case "remove_transfer":
+                group.removeTransfer(group.getTransfers().get(index));
+                break;
+            case "update":
+                group.updatePurchase(group.getPurchases().get(index), title, purchaser, recipients,
+                        Money.of(amount, currency), new TimeStamp(date));
+                break;
+            default:
+                throw new RuntimeException(String.format("Unknown record type \"%s\"!", op));
+        }
+    }
+
+    /**
+     * Opens the log channel.
+     */
+    private void openChannel() {
+        try {
+            channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to open journal \"%s\": %s", log, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Reads the generation from a log header line.
+     *
+     * @return A long value, or -1 for no header.
+     */
+    private static long readGeneration(String line) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(line));
+        String op = null;
+        long generation = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "op":
+                    op = reader.nextString();
+                    break;
+                case "generation":
+                    generation = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return "journal".equals(op) ? generation : -1;
+    }
+
+    /**
+     * Starts a record of the given type.
+     *
+     * @return A JsonWriter object.
+     */
+    private JsonWriter record(String op) {
+        if (channel == null) {
+            throw new RuntimeException("Journal has been closed!");
+        }
+
+        JsonWriter writer = new JsonWriter(pending);
+        try {
+            writer.beginObject();
+            writer.name("op").value(op);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return writer;
+    }
+
+    /**
+     * Reads the log from the start and applies its records to the group.
+     *
+     * @return A long value of the offset after the last complete line, or -1
+     *         for a log already folded into the snapshot.
+     */
+    private long read() {
+        long valid = 0;
+        long line_number = 0;
+        try {
+            InputStream input = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            long offset = 0;
+            int tmp;
+            while ((tmp = input.read()) != -1) {
+                offset++;
+                if (tmp != '\n') {
+                    bytes.write(tmp);
+                    continue;
+                }
+
+                String line = bytes.toString(StandardCharsets.UTF_8);
+                bytes.reset();
+                line_number++;
+
+                if (line_number == 1) {
+                    long generation = readGeneration(line);
+                    if (generation < 0) {
+                        throw new RuntimeException("Missing journal header!");
+                    } else if (generation > group.getJournalGeneration()) {
+                        throw new RuntimeException("Journal is newer than the snapshot!");
+                    } else if (generation < group.getJournalGeneration()) {
+                        // already folded into the snapshot by an interrupted compaction
+                        return -1;
+                    }
+                } else {
+                    apply(line);
+                    records++;
+                }
+                valid = offset;
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException(String.format("Invalid journal \"%s\" at line %d: %s",
+                    log, line_number, e.getMessage()), e);
+        }
+
+        return valid;
+    }
+
+    /**
+     * Replays the log onto the snapshot, a torn last line is truncated.
+     */
+    private void replay() {
+        openChannel();
+
+        long valid = read();
+        if (valid <= 0) {
+            reset();
+            return;
+        }
+
+        try {
+            channel.truncate(valid);
+            channel.position(valid);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to open journal \"%s\": %s", log, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Truncates the log to a header of the current generation.
+     */
+    private void reset() {
+        try {
+            channel.truncate(0);
+            channel.position(0);
+
+            StringWriter header = new StringWriter();
+            JsonWriter writer = new JsonWriter(header);
+            writer.beginObject();
+            writer.name("op").value("journal");
+            writer.name("generation").value(group.getJournalGeneration());
+            writer.endObject();
+            writer.flush();
+            header.write('\n');
+
+            ByteBuffer buffer = ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to reset journal \"%s\": %s", log, e.getMessage()), e);
+        }
+
+        records = 0;
+    }
+}
@@ -0,0 +1,178 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bulk loader opening many group files in parallel.
+ *
+ * The files are read and parsed on a fixed pool of threads, which bounds
+ * the concurrency. A file failing to load is recorded with its exception
+ * and does not abort the others. A mapping function may reduce every group
+ * to a report value right after loading, so the groups do not have to be
+ * kept in memory.
+ */
+public final class GroupLoader {
+    private int concurrency;
+
+    /**
+     * Result of a bulk load with the values and failures by path, both in
+     * the order of the given paths.
+     */
+    public static final class Result<T> {
+        private LinkedHashMap<String, T> values = new LinkedHashMap<String, T>();
+        private LinkedHashMap<String, RuntimeException> failures = new LinkedHashMap<String, RuntimeException>();
+
+        /**
+         * Gets the failures by path.
+         *
+         * @return A Map of type String and RuntimeException.
+         */
+        public Map<String, RuntimeException> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Gets the loaded values by path.
+         *
+         * @return A Map of type String and T.
+         */
+        public Map<String, T> getValues() {
+            return Collections.unmodifiableMap(values);
+        }
+
+        /**
+         * Checks any file to have failed.
+         *
+         * @return A boolean flag.
+         */
+        public boolean hasFailures() {
+            return !failures.isEmpty();
+        }
+    }
+
+    /**
+     * Initialize a GroupLoader object using all available processors.
+     */
+    public GroupLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initialize a GroupLoader object with the maximum number of files
+     * loaded at once.
+     */
+    public GroupLoader(int concurrency) {
+        if (concurrency <= 0) {
+            throw new RuntimeException("Invalid concurrency provided!");
+        }
+
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Gets the group files (*.json and *.jsplit) of a directory sorted by
+     * name.
+     *
+     * @return A List of strings.
+     */
+    public static List<String> list(String directory) {
+        try (Stream<Path> stream = Files.list(Path.of(directory))) {
+            return stream.filter(a -> Files.isRegularFile(a))
+                    .map(a -> a.toString())
+                    .filter(a -> a.endsWith(".json") || BinaryGroupWriter.isBinary(a))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to list directory \"%s\": %s", directory, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Loads the groups of the given paths.
+     *
+     * @return A Result object of groups.
+     */
+    public Result<Group> load(List<String> paths) {
+        return load(paths, a -> a);
+    }
+
+    /**
+     * Loads the groups of the given paths and maps each to a value.
+     *
+     * @return A Result object of values.
+     */
+    public <T> Result<T> load(List<String> paths, Function<Group, T> mapping) {
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(paths.size(), 1)),
+                a -> {
+                    Thread thread = new Thread(a, String.format("javasplit-loader-%d", counter.incrementAndGet()));
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>(paths.size());
+            for (String path : paths) {
+                futures.add(executor.submit(() -> mapping.apply(new Group(path))));
+            }
+
+            Result<T> result = new Result<T>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    result.values.put(paths.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    result.failures.put(paths.get(i), cause instanceof RuntimeException
+                            ? (RuntimeException) cause
+                            : new RuntimeException(cause));
+                }
+            }
+
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading groups!", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,516 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.google.gson.stream.JsonReader;
+
+import javasplit.utils.Currency;
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+
+/**
+ * Single pass group loader pulling tokens from a JsonReader.
+ *
+ * Purchases and transfers are linked as soon as they are read if the members
+ * and the exchange rates have already been read, otherwise they are kept as
+ * records until the end of the document, with member names instead of ids
+ * while the members are still unknown. Files written by save() list the
+ * members and rates first and stream in constant memory per entry. Legacy
+ * files list the exchange rates last, so all of their purchases and
+ * transfers are buffered before being linked. Exchange rates read before
+ * the group currency are kept as records until the currency is read. A
+ * legacy rate of the group currency itself is skipped, since amounts in the
+ * group currency are never converted.
+ */
+final class GroupReader {
+    private Group group;
+    private JsonReader reader;
+    private boolean has_currency = false;
+    private boolean has_members = false;
+    private boolean has_rates = false;
+    private ArrayList<Record> pending = new ArrayList<Record>();
+    private ArrayList<Rate> pending_rates = new ArrayList<Rate>();
+
+    /**
+     * Exchange rate read before the group currency.
+     */
+    private static final class Rate {
+        private Currency currency;
+        private double rate;
+        private TimeStamp effective;
+        private String location;
+    }
+
+    /**
+     * Purchase or transfer read before the members or the exchange rates.
+     */
+    private static final class Record {
+        private boolean transfer;
+        private String title;
+        private Member purchaser;
+        private int[] recipients;
+        private String purchaser_name;
+        private String[] recipient_names;
+        private double amount;
+        private Currency currency;
+        private TimeStamp date;
+        private String stamp;
+        private String location;
+    }
+
+    /**
+     * Initialize a GroupReader object filling the given group.
+     */
+    GroupReader(Group group, JsonReader reader) {
+        this.group = group;
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the whole document into the group.
+     */
+    void read() throws IOException {
+        String stamp = null;
+        String description = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (key) {
+                case "name":
+                    group.setName(reader.nextString());
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    break;
+                case "currency":
+                    group.setCurrency(readCurrency());
+                    has_currency = true;
+                    for (Rate rate : pending_rates) {
+                        setExchangeRate(rate);
+                    }
+                    pending_rates.clear();
+                    break;
+                case "stamp":
+                    stamp = reader.nextString();
+                    break;
+                case "journal_generation":
+                    group.setJournalGeneration(reader.nextLong());
+                    break;
+                case "exchange_rates":
+                    readExchangeRates();
+                    has_rates = true;
+                    break;
+                case "exchange_rate_history":
+                    readExchangeRateHistory();
+                    break;
+                case "members":
+                    readMembers();
+                    has_members = true;
+                    break;
+                case "purchases":
+                    readPurchases(false);
+                    break;
+                case "transfers":
+                    readPurchases(true);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!has_currency) {
+            throw error("Missing group currency");
+        }
+
+        group.setDescription(description);
+        if (stamp != null) {
+            group.setTime(stamp);
+        }
+
+        for (Record record : pending) {
+            try {
+                link(record);
+            } catch (RuntimeException e) {
+                throw new RuntimeException(String.format("%s at %s!", stripped(e), record.location), e);
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Creates an exception for the current reader location.
+     *
+     * @return A RuntimeException object.
+     */
+    private RuntimeException error(String message) {
+        return new RuntimeException(String.format("%s at %s!", message, location()));
+    }
+
+    /**
+     * Links a purchase or transfer record to the group.
+     */
+    private void link(Record record) {
+        if (record.purchaser_name != null) {
+            record.purchaser = group.getMemberByName(record.purchaser_name);
+        }
+        if (record.recipient_names != null) {
+            record.recipients = new int[record.recipient_names.length];
+            for (int i = 0; i < record.recipients.length; i++) {
+                record.recipients[i] = group.getMemberByName(record.recipient_names[i]).getId();
+            }
+        }
+
+        Money amount = Money.of(record.amount, record.currency);
+
+        if (record.transfer) {
+            Transfer transfer = new Transfer(group, record.title, record.purchaser,
+                    record.recipients[0], amount, record.date);
+            group.append(transfer);
+            if (record.stamp != null) {
+                transfer.setTime(record.stamp);
+            }
+        } else {
+            Purchase purchase = new Purchase(group, record.title, record.purchaser,
+                    record.recipients, amount, record.date);
+            group.append(purchase);
+            if (record.stamp != null) {
+                purchase.setTime(record.stamp);
+            }
+        }
+    }
+
+    /**
+     * Gets the current location of the reader.
+     *
+     * @return A string.
+     */
+    private String location() {
+        String tmp = reader.toString();
+        return tmp.substring(tmp.indexOf(" at ") + 4);
+    }
+
+    /**
+     * Reads a currency name.
+     *
+     * @return A Currency object.
+     */
+    private Currency readCurrency() throws IOException {
+        String name = reader.nextString();
+        try {
+            return Currency.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw error(String.format("Unknown currency \"%s\"", name));
+        }
+    }
+
+    /**
+     * Reads a currency from an object key.
+     *
+     * @return A Currency object.
+     */
+    private Currency readCurrencyName() throws IOException {
+        String name = reader.nextName();
+        try {
+            return Currency.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw error(String.format("Unknown currency \"%s\"", name));
+        }
+    }
+
+    /**
+     * Reads a date string.
+     *
+     * @return A TimeStamp object.
+     */
+    private TimeStamp readDate() throws IOException {
+        String date = reader.nextString();
+        try {
+            return new TimeStamp(date);
+        } catch (RuntimeException e) {
+            throw error(String.format("Invalid date \"%s\"", date));
+        }
+    }
+
+    /**
+     * Reads the date effective exchange rates.
+     */
+    private void readExchangeRateHistory() throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            Currency currency = readCurrencyName();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String date = reader.nextName();
+                TimeStamp effective;
+                try {
+                    effective = new TimeStamp(date);
+                } catch (RuntimeException e) {
+                    throw error(String.format("Invalid date \"%s\"", date));
+                }
+                readExchangeRate(currency, effective);
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads an exchange rate, which is kept as record while the group
+     * currency is unknown.
+     */
+    private void readExchangeRate(Currency currency, TimeStamp effective) throws IOException {
+        Rate rate = new Rate();
+        rate.currency = currency;
+        rate.rate = reader.nextDouble();
+        rate.effective = effective;
+        rate.location = location();
+
+        if (has_currency) {
+            setExchangeRate(rate);
+        } else {
+            pending_rates.add(rate);
+        }
+    }
+
+    /**
+     * Reads the undated exchange rates.
+     */
+    private void readExchangeRates() throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            readExchangeRate(readCurrencyName(), null);
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads the members.
+     */
+    private void readMembers() throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String name = null;
+            String stamp = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name":
+                        name = reader.nextString();
+                        break;
+                    case "stamp":
+                        stamp = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+
+            if (name == null) {
+                throw error("Missing member name");
+            }
+
+            Member member;
+            try {
+                member = group.addMember(name);
+            } catch (RuntimeException e) {
+                throw error(stripped(e));
+            }
+            if (stamp != null) {
+                member.setTime(stamp);
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Reads the purchases or transfers.
+     */
+    private void readPurchases(boolean transfer) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Record record = readRecord(transfer);
+
+            if (has_currency && has_members && has_rates) {
+                try {
+                    link(record);
+                } catch (RuntimeException e) {
+                    throw error(stripped(e));
+                }
+            } else {
+                record.location = location();
+                pending.add(record);
+            }
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Reads a single purchase or transfer record.
+     *
+     * @return A Record object.
+     */
+    private Record readRecord(boolean transfer) throws IOException {
+        Record record = new Record();
+        record.transfer = transfer;
+        record.amount = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title":
+                    record.title = reader.nextString();
+                    break;
+                case "purchaser":
+                    if (has_members) {
+                        record.purchaser = resolve(reader.nextString());
+                    } else {
+                        record.purchaser_name = reader.nextString();
+                    }
+                    break;
+                case "recipients":
+                    if (has_members) {
+                        record.recipients = readRecipients();
+                    } else {
+                        record.recipient_names = readRecipientNames();
+                    }
+                    break;
+                case "amount":
+                    record.amount = reader.nextDouble();
+                    break;
+                case "currency":
+                    record.currency = readCurrency();
+                    break;
+                case "date":
+                    record.date = readDate();
+                    break;
+                case "stamp":
+                    record.stamp = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        if (record.title == null || (record.purchaser == null && record.purchaser_name == null)
+                || (record.recipients == null && record.recipient_names == null) || Double.isNaN(record.amount) || record.currency == null || record.date == null) {
+            throw error(String.format("Incomplete %s", transfer ? "transfer" : "purchase"));
+        }
+
+        int count = record.recipients == null ? record.recipient_names.length : record.recipients.length;
+        if (transfer && count != 1) {
+            throw error("Transfer requires exactly one recipient");
+        }
+
+        reader.endObject();
+
+        return record;
+    }
+
+    /**
+     * Reads the recipient names as member ids.
+     *
+     * @return A int array.
+     */
+    private int[] readRecipients() throws IOException {
+        int[] tmp = new int[4];
+        int size = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == tmp.length) {
+                tmp = Arrays.copyOf(tmp, 2 * size);
+            }
+            tmp[size++] = resolve(reader.nextString()).getId();
+        }
+        reader.endArray();
+
+        return Arrays.copyOf(tmp, size);
+    }
+
+    /**
+     * Reads the recipient names of a record read before the members.
+     *
+     * @return A String array.
+     */
+    private String[] readRecipientNames() throws IOException {
+        ArrayList<String> tmp = new ArrayList<String>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            tmp.add(reader.nextString());
+        }
+        reader.endArray();
+
+        return tmp.toArray(new String[0]);
+    }
+
+    /**
+     * Resolves a member name.
+     *
+     * @return A Member object.
+     */
+    private Member resolve(String name) {
+        if (!group.hasMember(name)) {
+            throw error(String.format("Unknown member \"%s\"", name));
+        }
+
+        return group.getMemberByName(name);
+    }
+
+    /**
+     * Sets an exchange rate reporting failures at its location, skipping a
+     * legacy undated rate of the group currency.
+     */
+    private void setExchangeRate(Rate rate) {
+        if (rate.effective == null && rate.currency == group.getCurrency()) {
+            return;
+        }
+
+        try {
+            if (rate.effective == null) {
+                group.setExchangeRate(rate.currency, rate.rate);
+            } else {
+                group.setExchangeRate(rate.currency, rate.rate, rate.effective);
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException(String.format("%s at %s!", stripped(e), rate.location), e);
+        }
+    }
+
+    /**
+     * Gets the message of an exception without the trailing exclamation mark.
+     *
+     * @return A string.
+     */
+    private static String stripped(RuntimeException e) {
+        String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        return message.endsWith("!") ? message.substring(0, message.length() - 1) : message;
+    }
+}
@@ -0,0 +1,408 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Repository of the group files of a directory with a weight bounded LRU
+ * cache of loaded groups.
+ *
+ * Groups are opened by id, which is the file name without extension. A
+ * cached group is reused as long as its file and a pending journal log next
+ * to it are unchanged, compared by the full modification time, size and
+ * file key where the file system provides one. Groups marked as dirty are
+ * written back on eviction, on flush and on close. The weight of a group is
+ * the number of its members and loaded purchases and transfers. All methods
+ * are synchronized, the groups themselves are not thread safe.
+ */
+public final class GroupRepository implements Closeable {
+    private Path directory;
+    private String extension;
+    private long max_weight;
+    private long weight = 0;
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long write_backs = 0;
+    private long load_nanos = 0;
+
+    /**
+     * Cached group with file state.
+     */
+    private static final class Entry {
+        private Group group;
+        private FileState state;
+        private long weight;
+        private boolean dirty = false;
+    }
+
+    /**
+     * State of a group file and its journal log.
+     */
+    private static final class FileState {
+        private FileTime modified;
+        private long size;
+        private Object key;
+        private FileTime log_modified;
+        private long log_size = -1;
+        private Object log_key;
+
+        /**
+         * Checks the equality of two states.
+         *
+         * @return A boolean flag.
+         */
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof FileState)) {
+                return false;
+            }
+
+            FileState tmp = (FileState) object;
+            return modified.equals(tmp.modified) && size == tmp.size && Objects.equals(key, tmp.key)
+                    && Objects.equals(log_modified, tmp.log_modified) && log_size == tmp.log_size
+                    && Objects.equals(log_key, tmp.log_key);
+        }
+
+        /**
+         * Gets the hash code of the state.
+         *
+         * @return A integer value.
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(modified, size, key, log_modified, log_size, log_key);
+        }
+    }
+
+    /**
+     * Initialize a GroupRepository object with directory and maximum weight
+     * of Json group files.
+     */
+    public GroupRepository(String directory, long max_weight) {
+        this(directory, ".json", max_weight);
+    }
+
+    /**
+     * Initialize a GroupRepository object with directory, file extension and
+     * maximum weight.
+     */
+    public GroupRepository(String directory, String extension, long max_weight) {
+        if (max_weight <= 0) {
+            throw new RuntimeException("Invalid maximum weight provided!");
+        }
+
+        this.directory = Path.of(directory);
+        this.extension = extension;
+        this.max_weight = max_weight;
+    }
+
+    /**
+     * Writes back the dirty groups.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+    }
+
+    /**
+     * Adds a new group by id, which is written on flush.
+     *
+     * @return A Group object.
+     */
+    public synchronized Group create(String id, Group group) {
+        if (entries.containsKey(id) || Files.exists(getPath(id))) {
+            throw new RuntimeException("Duplicate group id provided!");
+        }
+
+        Entry entry = new Entry();
+        entry.group = group;
+        entry.state = null;
+        entry.dirty = true;
+        insert(id, entry);
+
+        return group;
+    }
+
+    /**
+     * Writes back the dirty groups and keeps them cached.
+     */
+    public synchronized void flush() {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().dirty) {
+                writeBack(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Gets a group by id, loading it on a cache miss or a changed file.
+     *
+     * @return A Group object.
+     */
+    public synchronized Group get(String id) {
+        Path path = getPath(id);
+        Entry entry = entries.get(id);
+
+        if (entry != null) {
+            FileState state = entry.dirty && entry.state == null ? null : getState(path);
+            if (Objects.equals(state, entry.state)) {
+                hits++;
+                reweigh(entry);
+                return entry.group;
+            }
+
+            if (entry.dirty) {
+                throw new RuntimeException(String.format("Group \"%s\" has been modified externally!", id));
+            }
+            remove(id);
+        }
+
+        misses++;
+        long start = System.nanoTime();
+        entry = new Entry();
+        entry.state = getState(path);
+        entry.group = new Group(path.toString());
+        load_nanos += System.nanoTime() - start;
+        insert(id, entry);
+
+        return entry.group;
+    }
+
+    /**
+     * Gets the number of evicted groups.
+     *
+     * @return A long value.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of cache hits.
+     *
+     * @return A long value.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the total time spent loading groups in nanoseconds.
+     *
+     * @return A long value.
+     */
+    public synchronized long getLoadNanos() {
+        return load_nanos;
+    }
+
+    /**
+     * Gets the number of cache misses.
+     *
+     * @return A long value.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the current weight of the cached groups.
+     *
+     * @return A long value.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Gets the number of written back groups.
+     *
+     * @return A long value.
+     */
+    public synchronized long getWriteBacks() {
+        return write_backs;
+    }
+
+    /**
+     * Checks a group to be cached.
+     *
+     * @return A boolean flag.
+     */
+    public synchronized boolean isCached(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * Marks a cached group as changed, it is written back on eviction,
+     * flush or close.
+     */
+    public synchronized void markDirty(String id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            throw new RuntimeException(String.format("Group \"%s\" is not cached!", id));
+        }
+
+        entry.dirty = true;
+        reweigh(entry);
+    }
+
+    /**
+     * Gets the number of cached groups.
+     *
+     * @return A integer value.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Evicts least recently used groups until the weight fits, the most
+     * recently used group is always kept.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (weight > max_weight && entries.size() > 1) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getValue().dirty) {
+                writeBack(eldest.getKey(), eldest.getValue());
+            }
+
+            weight -= eldest.getValue().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Gets the state of a group file and its journal log.
+     *
+     * @return A FileState object.
+     */
+    private static FileState getState(Path path) {
+        try {
+            FileState state = new FileState();
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            state.modified = attributes.lastModifiedTime();
+            state.size = attributes.size();
+            state.key = attributes.fileKey();
+
+            Path log = GroupJournal.getLog(path);
+            if (Files.exists(log)) {
+                attributes = Files.readAttributes(log, BasicFileAttributes.class);
+                state.log_modified = attributes.lastModifiedTime();
+                state.log_size = attributes.size();
+                state.log_key = attributes.fileKey();
+            }
+
+            return state;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to read group file \"%s\": %s", path, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Gets the file path of a group id.
+     *
+     * @return A Path object.
+     */
+    private Path getPath(String id) {
+        if (id.isBlank() || id.contains("/") || id.contains("\\")) {
+            throw new RuntimeException("Invalid group id provided!");
+        }
+
+        return directory.resolve(id + extension);
+    }
+
+    /**
+     * Gets the weight of a group.
+     *
+     * @return A long value.
+     */
+    private static long getWeight(Group group) {
+        long tmp = 1 + group.getNumberOfMembers();
+        if (group.isLoaded()) {
+            tmp += group.getPurchases().size() + group.getTransfers().size();
+        }
+
+        return tmp;
+    }
+
+    /**
+     * Inserts an entry as most recently used and evicts others.
+     */
+    private void insert(String id, Entry entry) {
+        entry.weight = getWeight(entry.group);
+        entries.put(id, entry);
+        weight += entry.weight;
+        evict();
+    }
+
+    /**
+     * Removes an entry without writing it back.
+     */
+    private void remove(String id) {
+        weight -= entries.remove(id).weight;
+    }
+
+    /**
+     * Updates the weight of an entry, which may have grown.
+     */
+    private void reweigh(Entry entry) {
+        long tmp = getWeight(entry.group);
+        weight += tmp - entry.weight;
+        entry.weight = tmp;
+        evict();
+    }
+
+    /**
+     * Saves a dirty group and records the new file state.
+     */
+    private void writeBack(String id, Entry entry) {
+        Path path = getPath(id);
+        entry.group.save(path.toString());
+        entry.state = getState(path);
+        entry.dirty = false;
+        write_backs++;
+    }
+
+    /**
+     * Converts to an equivalent string.
+     *
+     * @return A string.
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("%s [%d groups, weight %d/%d, %d hits, %d misses, %d evictions, %d write backs, %.1f ms loading]",
+                directory, entries.size(), weight, max_weight, hits, misses, evictions, write_backs, load_nanos / 1e6);
+    }
+}
@@ -0,0 +1,233 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.stream.JsonWriter;
+
+import javasplit.utils.Currency;
+import javasplit.utils.TimeStamp;
+
+/**
+ * Streaming group writer with crash-safe replacement of the target file.
+ *
+ * The entities are written one by one to a JsonWriter over a buffered file
+ * channel, so the memory use does not depend on the number of purchases.
+ * The output goes to a temporary file next to the target, which is synced
+ * and then atomically renamed onto the target.
+ */
+final class GroupWriter {
+    static final int buffer_size = 1 << 16;
+
+    private Group group;
+    private boolean pretty;
+
+    /**
+     * Initialize a GroupWriter object with group and pretty printing flag.
+     */
+    GroupWriter(Group group, boolean pretty) {
+        this.group = group;
+        this.pretty = pretty;
+    }
+
+    /**
+     * Content written to a file channel.
+     */
+    interface Content {
+        /**
+         * Writes the content to the channel without closing it.
+         */
+        void write(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Writes the group to a path.
+     */
+    void write(Path path) throws IOException {
+        replace(path, channel -> {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(
+                    Channels.newWriter(channel, StandardCharsets.UTF_8), buffer_size));
+            if (pretty) {
+                writer.setIndent("  ");
+            }
+
+            writeGroup(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Replaces a file by writing the content to a synced temporary file,
+     * which is then atomically renamed onto the target.
+     */
+    static void replace(Path path, Content content) throws IOException {
+        Path target = path.toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            content.write(channel);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        syncDirectory(target.getParent());
+    }
+
+    /**
+     * Syncs a directory to persist a rename, where supported.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened or synced on every platform
+        }
+    }
+
+    /**
+     * Writes the exchange rates, the date effective ones only if present.
+     */
+    private void writeExchangeRates(JsonWriter writer) throws IOException {
+        Map<Currency, TreeMap<Long, Double>> rates = group.getExchangeRates().getRates();
+
+        writer.name("exchange_rates").beginObject();
+        for (Map.Entry<Currency, TreeMap<Long, Double>> entry : rates.entrySet()) {
+            Double rate = entry.getValue().get(ExchangeRates.undated);
+            if (rate != null) {
+                writer.name(entry.getKey().name()).value(rate);
+            }
+        }
+        writer.endObject();
+
+        boolean has_history = false;
+        for (Map.Entry<Currency, TreeMap<Long, Double>> entry : rates.entrySet()) {
+            if (entry.getValue().lastKey() == ExchangeRates.undated) {
+                continue;
+            }
+
+            if (!has_history) {
+                writer.name("exchange_rate_history").beginObject();
+                has_history = true;
+            }
+
+            writer.name(entry.getKey().name()).beginObject();
+            for (Map.Entry<Long, Double> point : entry.getValue().entrySet()) {
+                if (point.getKey() != ExchangeRates.undated) {
+                    writer.name(TimeStamp.ofEpochSecond(point.getKey()).toString()).value(point.getValue());
+                }
+            }
+            writer.endObject();
+        }
+
+        if (has_history) {
+            writer.endObject();
+        }
+    }
+
+    /**
+     * Writes the group object.
+     */
+    private void writeGroup(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("name").value(group.getName());
+        writer.name("description").value(group.getDescription());
+        writer.name("currency").value(group.getCurrency().name());
+
+        // the rates precede the purchases to allow linking them while reading
+        writeExchangeRates(writer);
+
+        writer.name("members").beginArray();
+        for (Member member : group.getMembers()) {
+            writer.beginObject();
+            writer.name("name").value(member.getName());
+            writer.name("stamp").value(member.getStamp().toString());
+            writer.endObject();
+        }
+        writer.endArray();
+
+        writer.name("purchases").beginArray();
+        for (Purchase purchase : group.getPurchases()) {
+            writePurchase(writer, purchase);
+        }
+        writer.endArray();
+
+        writer.name("transfers").beginArray();
+        for (Transfer transfer : group.getTransfers()) {
+            writePurchase(writer, transfer);
+        }
+        writer.endArray();
+
+        if (group.getJournalGeneration() != 0) {
+            writer.name("journal_generation").value(group.getJournalGeneration());
+        }
+
+        writer.name("stamp").value(group.getStamp().toString());
+        writer.endObject();
+    }
+
+    /**
+     * Writes a purchase or transfer object.
+     */
+    private static void writePurchase(JsonWriter writer, Purchase purchase) throws IOException {
+        writer.beginObject();
+        writePurchaseFields(writer, purchase);
+        writer.name("stamp").value(purchase.getStamp().toString());
+        writer.endObject();
+    }
+
+    /**
+     * Writes the fields of a purchase or transfer without stamp.
+     */
+    static void writePurchaseFields(JsonWriter writer, Purchase purchase) throws IOException {
+        writer.name("purchaser").value(purchase.purchaser.getName());
+        writer.name("recipients").beginArray();
+        for (int id : purchase.recipients) {
+            writer.value(purchase.group.getMember(id).getName());
+        }
+        writer.endArray();
+        writer.name("amount").value(purchase.amount.toDouble());
+        writer.name("currency").value(purchase.amount.getCurrency().name());
+        writer.name("date").value(purchase.date.toString());
+        writer.name("title").value(purchase.title);
+    }
+}
@@ -21,8 +21,12 @@
 // SOFTWARE.
 package javasplit;
 
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 import picocli.CommandLine;
@@ -41,9 +45,21 @@ import javasplit.utils.Utils;
 @Command(name = "JavaSplit", mixinStandardHelpOptions = true, version = "1.0.0", description = "A simple Java package for money pool split development.")
 class JavaSplit implements Callable<Integer> {
 
+    @Option(names = { "-b", "--bulk" }, description = "Load all group files of a directory in parallel and print a summary")
+    String bulk_directory;
+
+    @Option(names = { "-c", "--convert" }, description = "Save the group also to the given path (*.jsplit for binary)")
+    String convert_path;
+
     @Option(names = { "-e", "--exchange" }, description = "Add exchange rate(s) to the group")
     boolean add_exchange;
 
+    @Option(names = { "-i", "--import" }, description = "Import purchases and transfers from a CSV or Json lines file")
+    String import_path;
+
+    @Option(names = { "-j", "--journal" }, description = "Append the changes to a journal next to the group file")
+    boolean use_journal;
+
     @Option(names = { "-m", "--member" }, description = "Add member(s) to the group")
     boolean add_member;
 
@@ -53,15 +69,25 @@ class JavaSplit implements Callable<Integer> {
     @Option(names = { "-t", "--transfer" }, description = "Add transfer(s) to the group")
     boolean add_transfer;
 
+    @Option(names = { "--threads" }, description = "The number of threads of the bulk mode (default: number of processors)")
+    int threads = Runtime.getRuntime().availableProcessors();
+
     @Parameters(index = "0", arity = "0..1", description = "The path to a group file")
     String group_path;
 
     @Override
     public Integer call() throws Exception {
+        if (bulk_directory != null) {
+            return bulk();
+        }
 
         InputScanner scanner = new InputScanner();
+        GroupJournal journal = null;
         Group group;
-        if (group_path != null) {
+        if (group_path != null && (use_journal || Files.exists(Path.of(group_path + ".log")))) {
+            journal = GroupJournal.open(group_path);
+            group = journal.getGroup();
+        } else if (group_path != null) {
             group = new Group(group_path);
         } else {
             String inp_title = scanner.get("Group title", "Untitled", a -> a);
@@ -168,22 +194,74 @@ class JavaSplit implements Callable<Integer> {
             }
         }
 
+        if (import_path != null) {
+            PurchaseImporter.Result result;
+            try (Reader reader = Files.newBufferedReader(Path.of(import_path))) {
+                result = group.importPurchases(reader);
+            }
+
+            for (Map.Entry<Long, String> error : result.getErrors().entrySet()) {
+                System.err.println(String.format("%s:%d -> %s", import_path, error.getKey(), error.getValue()));
+            }
+
+            System.out.println(String.format("Imported %d row(s), %d error(s)",
+                    result.getImported(), result.getErrors().size()));
+        }
+
         // print the group stats
         group.print();
 
         // store the group in the existing file or create a new one
-        String file_path = group_path;
-        if (group_path == null) {
-            String tmp = group.getName().toLowerCase().replace(" ", "_");
-            file_path = scanner.get("Provide file name", tmp, a -> a);
+        if (journal != null) {
+            journal.close();
+        } else {
+            String file_path = group_path;
+            if (group_path == null) {
+                String tmp = group.getName().toLowerCase().replace(" ", "_");
+                file_path = scanner.get("Provide file name", tmp, a -> a);
+            }
+
+            if (use_journal) {
+                GroupJournal.create(file_path, group).close();
+            } else {
+                group.save(file_path);
+            }
         }
 
-        group.save(file_path);
+        if (convert_path != null) {
+            group.save(convert_path);
+        }
         scanner.close();
 
         return 0;
     }
 
+    /**
+     * Loads all group files of the bulk directory and prints a summary line
+     * per group and the failures.
+     *
+     * @return A integer exit code.
+     */
+    private Integer bulk() {
+        GroupLoader.Result<String> result = new GroupLoader(threads).load(GroupLoader.list(bulk_directory),
+                a -> String.format("%s: %d members, %d purchases, %d transfers, %.2f %s turnover",
+                        a.getName(), a.getNumberOfMembers(), a.getPurchases().size(), a.getTransfers().size(),
+                        a.getTurnover(), a.getCurrency().name()));
+
+        for (Map.Entry<String, String> value : result.getValues().entrySet()) {
+            System.out.println(String.format("%s -> %s", value.getKey(), value.getValue()));
+        }
+
+        for (Map.Entry<String, RuntimeException> failure : result.getFailures().entrySet()) {
+            System.err.println(String.format("%s -> %s", failure.getKey(), failure.getValue().getMessage()));
+        }
+
+        System.out.println(String.format("Loaded %d group(s), %d failure(s)",
+                result.getValues().size(), result.getFailures().size()));
+
+        return result.hasFailures() ? 1 : 0;
+    }
+
     // this example implements Callable, so parsing, error handling and handling
     // user
     // requests for usage help or version help can be done with one line of code.
@@ -21,22 +21,31 @@
 // SOFTWARE.
 package javasplit;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 
 import javasplit.utils.Base;
+import javasplit.utils.Money;
 
 /**
  * Member class which also links purchases and transfers.
  */
 public class Member extends Base {
+    private Group group;
+    private int id;
     private String name;
-    private ArrayList<Purchase> participations = new ArrayList<Purchase>();
+    private LinkedHashSet<Purchase> participations = new LinkedHashSet<Purchase>();
+    private long[] paid = new long[1];
+    private long[] owed = new long[1];
+    private long[] spent = new long[1];
 
     /**
-     * Initialize a Member object.
+     * Initialize a Member object with group, group id and name.
      */
-    public Member(String name) {
+    public Member(Group group, int id, String name) {
+        this.group = group;
+        this.id = id;
         this.name = name;
     }
 
@@ -48,25 +57,85 @@ public class Member extends Base {
     }
 
     /**
-     * Gets the balance of the member.
+     * Adds minor units of an exchange rate segment to the owed subtotal.
+     */
+    void addOwed(int segment, long units) {
+        ensureSegment(segment);
+        owed[segment] += units;
+    }
+
+    /**
+     * Adds minor units of an exchange rate segment to the paid subtotal.
+     */
+    void addPaid(int segment, long units) {
+        ensureSegment(segment);
+        paid[segment] += units;
+    }
+
+    /**
+     * Adds minor units of an exchange rate segment to the spent subtotal of
+     * purchases paid by the member.
+     */
+    void addSpent(int segment, long units) {
+        ensureSegment(segment);
+        spent[segment] += units;
+    }
+
+    /**
+     * Gets the balance of the member in group currency. The balances of the
+     * group are cached, the first read after a change recomputes all members
+     * in O(members * segments + members log members). The balances are
+     * rounded together to sum up to zero, so a change of other members can
+     * move the balance of this member by a minor unit.
      *
-     * @return A Double value.
+     * @return A Money object.
      */
-    public double getBalance() {
+    public Money getBalance() {
+        return new Money(group.getBalanceUnits()[id], group.getCurrency());
+    }
+
+    /**
+     * Gets the unrounded balance in minor units of the group currency by
+     * applying the segment multipliers to the subtotals.
+     *
+     * @return A double value.
+     */
+    double getExactBalance(double[] multipliers) {
         double balance = 0.0;
-        for (Purchase participation : participations) {
-            if (participation.isPurchaser(name)) {
-                balance += participation.getAmount();
-            }
-
-            if (participation.isRecipient(name)) {
-                balance -= participation.getAmountPerMember();
-            }
+        for (int i = 0; i < paid.length; i++) {
+            balance += (paid[i] - owed[i]) * multipliers[i];
         }
 
         return balance;
     }
 
+    /**
+     * Gets the owed subtotal of an exchange rate segment in minor units.
+     *
+     * @return A long value.
+     */
+    long getOwed(int segment) {
+        return segment < owed.length ? owed[segment] : 0;
+    }
+
+    /**
+     * Gets the paid subtotal of an exchange rate segment in minor units.
+     *
+     * @return A long value.
+     */
+    long getPaid(int segment) {
+        return segment < paid.length ? paid[segment] : 0;
+    }
+
+    /**
+     * Gets the dense id of the member within the group.
+     *
+     * @return A integer value.
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * Gets the name of the member
      *
@@ -76,6 +145,62 @@ public class Member extends Base {
         return name;
     }
 
+    /**
+     * Gets the amount of the purchases paid by the member in group currency,
+     * converted by the current exchange rates.
+     *
+     * @return A Money object.
+     */
+    public Money getSpending() {
+        group.load();
+
+        double spending = 0.0;
+        for (int i = 0; i < spent.length; i++) {
+            spending += spent[i] * group.getMultiplier(i);
+        }
+
+        return new Money((long) Math.rint(spending), group.getCurrency());
+    }
+
+    /**
+     * Gets the spent subtotal of an exchange rate segment in minor units.
+     *
+     * @return A long value.
+     */
+    long getSpent(int segment) {
+        return segment < spent.length ? spent[segment] : 0;
+    }
+
+    /**
+     * Gets a page of the date ordered statement with at most limit rows
+     * starting at a cursor, 0 for the first page.
+     *
+     * @return A Statement object.
+     */
+    public Statement getStatement(int cursor, int limit) {
+        return group.getStatement(this, cursor, limit);
+    }
+
+    /**
+     * Checks a purchase to be in the participation list.
+     *
+     * @return A boolean flag.
+     */
+    public boolean hasParticipation(Purchase purchase) {
+        group.load();
+        return participations.contains(purchase);
+    }
+
+    /**
+     * Gets the number of participations.
+     *
+     * @return A integer value.
+     */
+    public int numberOfParticipations() {
+        group.load();
+        return participations.size();
+    }
+
     /**
      * Removes a purchase from the participation list.
      */
@@ -83,6 +208,26 @@ public class Member extends Base {
         participations.remove(participation);
     }
 
+    /**
+     * Clears the subtotals of all exchange rate segments.
+     */
+    void resetSubtotals() {
+        Arrays.fill(paid, 0);
+        Arrays.fill(owed, 0);
+        Arrays.fill(spent, 0);
+    }
+
+    /**
+     * Grows the subtotals to hold an exchange rate segment.
+     */
+    private void ensureSegment(int segment) {
+        if (segment >= paid.length) {
+            paid = Arrays.copyOf(paid, segment + 1);
+            owed = Arrays.copyOf(owed, segment + 1);
+            spent = Arrays.copyOf(spent, segment + 1);
+        }
+    }
+
     /**
      * Serializes the object.
      *
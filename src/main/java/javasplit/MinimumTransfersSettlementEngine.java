@@ -0,0 +1,430 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+
+/**
+ * MinimumTransfersSettlementEngine class computing a settlement with the
+ * fewest possible transfers.
+ *
+ * The members are partitioned into the largest number of zero-sum subsets,
+ * each of which is settled with one transfer less than its size. Small
+ * problems are solved by a bitmask dynamic program, larger ones by a parallel
+ * branch and bound search which is bounded by a time budget and falls back to
+ * the greedy settlement.
+ */
+public class MinimumTransfersSettlementEngine implements SettlementEngine {
+    private static final int check_interval = 1 << 12;
+    private int dp_limit = 20;
+    private long time_budget;
+    private ForkJoinPool pool;
+    private GreedySettlementEngine greedy = new GreedySettlementEngine();
+
+    /**
+     * Initialize a MinimumTransfersSettlementEngine object.
+     */
+    public MinimumTransfersSettlementEngine() {
+        this(1000);
+    }
+
+    /**
+     * Initialize a MinimumTransfersSettlementEngine object with a time budget
+     * in milliseconds for the branch and bound search.
+     */
+    public MinimumTransfersSettlementEngine(long time_budget) {
+        this(time_budget, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initialize a MinimumTransfersSettlementEngine object with a time budget
+     * in milliseconds and the pool running the branch and bound search.
+     */
+    public MinimumTransfersSettlementEngine(long time_budget, ForkJoinPool pool) {
+        this.time_budget = time_budget;
+        this.pool = pool;
+    }
+
+    /**
+     * Gets the list of balances settling the given member balances.
+     *
+     * @return A List of type Balance.
+     */
+    @Override
+    public List<Balance> settle(Group group, List<Member> members, long[] units) {
+        ArrayList<Balance> pending = new ArrayList<Balance>();
+
+        // settle exact opposite pairs directly, they always form a subset
+        HashMap<Long, ArrayDeque<Integer>> open_by_units = new HashMap<Long, ArrayDeque<Integer>>();
+        boolean[] settled = new boolean[units.length];
+        int number_open = 0;
+        for (int i = 0; i < units.length; i++) {
+            if (units[i] == 0) {
+                continue;
+            }
+
+            ArrayDeque<Integer> matches = open_by_units.get(-units[i]);
+            if (matches == null || matches.isEmpty()) {
+                open_by_units.computeIfAbsent(units[i], a -> new ArrayDeque<Integer>()).add(i);
+                number_open++;
+            } else {
+                int other = matches.poll();
+                settled[i] = true;
+                settled[other] = true;
+                number_open--;
+                addBalance(group, members, pending, units[i] < 0 ? i : other,
+                        units[i] < 0 ? other : i, Math.abs(units[i]));
+            }
+        }
+
+        int[] index = new int[number_open];
+        for (int i = 0, j = 0; i < units.length; i++) {
+            if (units[i] != 0 && !settled[i]) {
+                index[j++] = i;
+            }
+        }
+        long[] debts = new long[index.length];
+        for (int i = 0; i < index.length; i++) {
+            debts[i] = units[index[i]];
+        }
+
+        if (index.length <= dp_limit) {
+            for (int[] subset : partition(debts)) {
+                settleSubset(group, members, index, debts, subset, pending);
+            }
+        } else {
+            // the greedy settlement of the open debts bounds the search
+            ArrayList<Member> tmp_members = new ArrayList<Member>();
+            for (int i = 0; i < index.length; i++) {
+                tmp_members.add(members.get(index[i]));
+            }
+            List<Balance> fallback = greedy.settle(group, tmp_members, debts);
+
+            Search search = new Search(System.nanoTime() + time_budget * 1000000L, fallback.size());
+            pool.invoke(search.new Branch(debts, 0, 0, new long[0][]));
+            if (search.solution == null) {
+                pending.addAll(fallback);
+                return pending;
+            }
+
+            for (long[] transfer : search.solution) {
+                addBalance(group, members, pending, index[(int) transfer[0]],
+                        index[(int) transfer[1]], transfer[2]);
+            }
+        }
+
+        return pending;
+    }
+
+    /**
+     * Sets the number of members up to which the dynamic program is used.
+     */
+    public void setDynamicProgramLimit(int dp_limit) {
+        this.dp_limit = dp_limit;
+    }
+
+    /**
+     * Adds a balance from sender to receiver given in minor units.
+     */
+    private void addBalance(Group group, List<Member> members, List<Balance> pending,
+            int sender, int receiver, long amount) {
+        pending.add(new Balance(group, members.get(sender).getName(),
+                members.get(receiver).getName(), new Money(amount, group.getCurrency()),
+                new TimeStamp()));
+    }
+
+    /**
+     * Gets the maximum partition of the debts into zero-sum subsets.
+     *
+     * @return A List of type int array holding the debt indices.
+     */
+    private static List<int[]> partition(long[] debts) {
+        int n = debts.length;
+        int full = (1 << n) - 1;
+        long[] sums = new long[full + 1];
+        byte[] groups = new byte[full + 1];
+
+        for (int mask = 1; mask <= full; mask++) {
+            int low = Integer.numberOfTrailingZeros(mask);
+            sums[mask] = sums[mask & (mask - 1)] + debts[low];
+
+            int best = 0;
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int bit = rest & -rest;
+                best = Math.max(best, groups[mask ^ bit]);
+            }
+            groups[mask] = (byte) (best + (sums[mask] == 0 ? 1 : 0));
+        }
+
+        // walk back the optimal chain and cut it at the zero-sum masks
+        ArrayList<int[]> subsets = new ArrayList<int[]>();
+        int mask = full;
+        int cut = full;
+        while (mask != 0) {
+            int target = groups[mask] - (sums[mask] == 0 ? 1 : 0);
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                int bit = rest & -rest;
+                if (groups[mask ^ bit] == target) {
+                    mask ^= bit;
+                    break;
+                }
+            }
+
+            if (sums[mask] == 0) {
+                subsets.add(bits(cut ^ mask));
+                cut = mask;
+            }
+        }
+
+        return subsets;
+    }
+
+    /**
+     * Gets the indices of the set bits of a mask.
+     *
+     * @return A int array.
+     */
+    private static int[] bits(int mask) {
+        int[] tmp = new int[Integer.bitCount(mask)];
+        for (int i = 0; mask != 0; mask &= mask - 1) {
+            tmp[i++] = Integer.numberOfTrailingZeros(mask);
+        }
+        return tmp;
+    }
+
+    /**
+     * Settles a zero-sum subset of the debts greedily, which needs at most
+     * one transfer less than the subset size.
+     */
+    private void settleSubset(Group group, List<Member> members, int[] index, long[] debts,
+            int[] subset, List<Balance> pending) {
+        ArrayList<Member> tmp_members = new ArrayList<Member>();
+        long[] tmp_balances = new long[subset.length];
+        for (int i = 0; i < subset.length; i++) {
+            tmp_members.add(members.get(index[subset[i]]));
+            tmp_balances[i] = debts[subset[i]];
+        }
+
+        pending.addAll(greedy.settle(group, tmp_members, tmp_balances));
+    }
+
+    /**
+     * Shared state of a parallel branch and bound search.
+     */
+    private static final class Search {
+        private long deadline;
+        private AtomicInteger best;
+        private volatile boolean expired = false;
+        private long[][] solution = null;
+
+        /**
+         * Initialize a Search object with a deadline and the number of
+         * transfers to improve on.
+         */
+        Search(long deadline, int bound) {
+            this.deadline = deadline;
+            this.best = new AtomicInteger(bound);
+        }
+
+        /**
+         * Stores a solution if it improves the best one.
+         */
+        synchronized void offer(long[][] transfers) {
+            if (transfers.length < best.get()) {
+                best.set(transfers.length);
+                solution = transfers;
+            }
+        }
+
+        /**
+         * Branch of the search settling the first open debt with one of the
+         * following debts of opposite sign.
+         */
+        private final class Branch extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private long[] debts;
+            private int start;
+            private int count;
+            private long[][] path;
+            private int nodes = 0;
+
+            /**
+             * Initialize a Branch object.
+             */
+            Branch(long[] debts, int start, int count, long[][] path) {
+                this.debts = debts;
+                this.start = start;
+                this.count = count;
+                this.path = path;
+            }
+
+            /**
+             * Expands the branch into parallel sub branches at the top levels.
+             */
+            @Override
+            protected void compute() {
+                if (expired) {
+                    return;
+                }
+
+                while (start < debts.length && debts[start] == 0) {
+                    start++;
+                }
+
+                if (start == debts.length) {
+                    offer(path);
+                    return;
+                }
+
+                if (count + lowerBound(debts, start) >= best.get()) {
+                    return;
+                }
+
+                if (count >= 2) {
+                    search(start, count, new ArrayList<long[]>(Arrays.asList(path)));
+                    return;
+                }
+
+                ArrayList<Branch> branches = new ArrayList<Branch>();
+                for (int j = start + 1; j < debts.length; j++) {
+                    if (!isCandidate(debts, start, j)) {
+                        continue;
+                    }
+
+                    long[] tmp = debts.clone();
+                    tmp[j] += tmp[start];
+                    long[][] tmp_path = Arrays.copyOf(path, path.length + 1);
+                    tmp_path[path.length] = transfer(debts, start, j);
+                    tmp[start] = 0;
+                    branches.add(new Branch(tmp, start + 1, count + 1, tmp_path));
+                }
+
+                invokeAll(branches);
+            }
+
+            /**
+             * Searches the branch sequentially.
+             */
+            private void search(int start, int count, ArrayList<long[]> path) {
+                if (expired || ++nodes % check_interval == 0 && System.nanoTime() > deadline) {
+                    expired = true;
+                    return;
+                }
+
+                while (start < debts.length && debts[start] == 0) {
+                    start++;
+                }
+
+                if (start == debts.length) {
+                    offer(path.toArray(new long[0][]));
+                    return;
+                }
+
+                if (count + lowerBound(debts, start) >= best.get()) {
+                    return;
+                }
+
+                long debt = debts[start];
+                for (int j = start + 1; j < debts.length; j++) {
+                    if (!isCandidate(debts, start, j)) {
+                        continue;
+                    }
+
+                    path.add(transfer(debts, start, j));
+                    debts[j] += debt;
+                    debts[start] = 0;
+                    search(start + 1, count + 1, path);
+                    debts[start] = debt;
+                    debts[j] -= debt;
+                    path.remove(path.size() - 1);
+
+                    // an exact match can not be improved by other choices
+                    if (debts[j] + debt == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks debt j to be an unvisited counterpart of the debt at start.
+         *
+         * @return A boolean flag.
+         */
+        private static boolean isCandidate(long[] debts, int start, int j) {
+            if (debts[j] == 0 || (debts[j] > 0) == (debts[start] > 0)) {
+                return false;
+            }
+
+            // equal debts lead to equal sub trees
+            for (int k = start + 1; k < j; k++) {
+                if (debts[k] == debts[j]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Gets the lower bound of transfers settling the open debts.
+         *
+         * @return A integer value.
+         */
+        private static int lowerBound(long[] debts, int start) {
+            int debtors = 0;
+            int creditors = 0;
+            for (int i = start; i < debts.length; i++) {
+                if (debts[i] < 0) {
+                    debtors++;
+                } else if (debts[i] > 0) {
+                    creditors++;
+                }
+            }
+            return Math.max(debtors, creditors);
+        }
+
+        /**
+         * Gets the transfer settling the debt at start with debt j.
+         *
+         * @return A long array holding sender, receiver and amount.
+         */
+        private static long[] transfer(long[] debts, int start, int j) {
+            if (debts[start] < 0) {
+                return new long[] { start, j, -debts[start] };
+            } else {
+                return new long[] { j, start, debts[start] };
+            }
+        }
+    }
+}
@@ -21,14 +21,14 @@
 // SOFTWARE.
 package javasplit;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 
 import javasplit.utils.Base;
 import javasplit.utils.Currency;
+import javasplit.utils.Money;
 import javasplit.utils.TimeStamp;
-import javasplit.utils.Utils;
 
 /**
  * Purchase class.
@@ -36,44 +36,117 @@ import javasplit.utils.Utils;
 public class Purchase extends Base {
     protected Group group;
     protected Member purchaser;
-    protected LinkedHashMap<String, Member> recipients = new LinkedHashMap<String, Member>();
-    protected Double amount;
+    protected int[] recipients;
+    protected Money amount;
+    protected int segment;
     protected TimeStamp date;
     protected String title;
-    protected Currency currency;
+    protected int position = -1;
 
     /**
      * Initialize a Purchase object.
      */
     public Purchase(Group group, String title, String purchaser, List<String> recipients,
-            Double amount, Currency currency, TimeStamp date) {
+            Money amount, TimeStamp date) {
+        this(group, title, group.getMemberByName(purchaser), toIds(group, recipients), amount, date);
+    }
+
+    /**
+     * Initialize a Purchase object from a resolved purchaser and recipient
+     * ids, which are sorted and made unique.
+     */
+    Purchase(Group group, String title, Member purchaser, int[] recipients,
+            Money amount, TimeStamp date) {
+        this(group, title, purchaser, recipients, amount, date, true);
+    }
+
+    /**
+     * Initialize a Purchase object from a resolved purchaser and recipient
+     * ids, optionally without linking it. An unlinked Purchase is booked by
+     * the caller, for example a concurrent writer summing up a batch.
+     */
+    Purchase(Group group, String title, Member purchaser, int[] recipients,
+            Money amount, TimeStamp date, boolean link) {
         this.group = group;
         this.title = title;
-        setPurchaser(purchaser);
-        setRecipients(recipients);
+        this.purchaser = purchaser;
+        this.recipients = normalize(recipients);
         this.amount = amount;
-        this.currency = currency;
         this.date = date;
+        this.segment = group.getSegment(amount.getCurrency(), date);
 
-        link();
+        if (link) {
+            link();
+        }
     }
 
     /**
-     * Gets the amount in group currency.
+     * Books the raw amounts to the subtotals of the members and the group.
+     * A positive sign adds this Purchase, a negative sign removes it.
+     */
+    protected void book(int sign) {
+        Money[] amount_per_member = amount.split(numberOfRecipients());
+
+        purchaser.addPaid(segment, sign * amount.getUnits());
+        for (int i = 0; i < recipients.length; i++) {
+            group.getMember(recipients[i]).addOwed(segment, sign * amount_per_member[i].getUnits());
+        }
+
+        group.book(this, sign);
+    }
+
+    /**
+     * Gets the amount in group currency at the exchange rate in effect at the
+     * purchase date.
      *
-     * @return A double value.
+     * @return A Money object.
      */
-    public Double getAmount() {
-        return group.exchange(amount, currency);
+    public Money getAmount() {
+        return new Money(group.exchangeUnits(amount.getUnits(), segment), group.getCurrency());
     }
 
     /**
-     * Gets the amount per member in group currency.
+     * Gets the amount per member in group currency. The shares follow the
+     * recipient order and sum up to the amount exactly.
      *
-     * @return A double value.
+     * @return A Money array.
+     */
+    public Money[] getAmountPerMember() {
+        return getAmount().split(numberOfRecipients());
+    }
+
+    /**
+     * Gets the currency of the amount.
+     *
+     * @return A Currency object.
+     */
+    public Currency getCurrency() {
+        return amount.getCurrency();
+    }
+
+    /**
+     * Gets the recipient names in member id order.
+     *
+     * @return A List of type string.
+     */
+    public List<String> getRecipientNames() {
+        String[] names = new String[recipients.length];
+        for (int i = 0; i < recipients.length; i++) {
+            names[i] = group.getMember(recipients[i]).getName();
+        }
+
+        return Arrays.asList(names);
+    }
+
+    /**
+     * Checks the exchange rate of the currency in effect from one epoch second
+     * until before another to apply to this Purchase.
+     *
+     * @return A boolean flag.
      */
-    public Double getAmountPerMember() {
-        return getAmount() / numberOfRecipients();
+    protected boolean isAffected(Currency currency, long from, long until) {
+        long second = date.getEpochSecond();
+        return amount.getCurrency() == currency && second >= from && second < until;
     }
 
     /**
@@ -85,24 +158,51 @@ public class Purchase extends Base {
         return purchaser.getName().equals(name);
     }
 
+    /**
+     * Checks the member to be the purchaser.
+     *
+     * @return A boolean flag.
+     */
+    public boolean isPurchaser(Member member) {
+        return purchaser == member;
+    }
+
     /**
      * Checks the name to be a recipients.
      *
      * @return A boolean flag.
      */
     public boolean isRecipient(String name) {
-        return recipients.containsKey(name);
+        return group.hasMember(name) && isRecipient(group.getMemberByName(name));
+    }
+
+    /**
+     * Checks the member to be a recipient.
+     *
+     * @return A boolean flag.
+     */
+    public boolean isRecipient(Member member) {
+        return Arrays.binarySearch(recipients, member.getId()) >= 0;
     }
 
     /**
      * Link this Purchase in all members.
      */
     protected void link() {
-        HashSet<Member> members = new HashSet<Member>(recipients.values());
-        members.add(purchaser);
+        book(1);
+        linkParticipations();
+    }
 
-        for (Member member : members) {
-            member.addParticipation(this);
+    /**
+     * Adds this Purchase to the participation lists of its members.
+     */
+    void linkParticipations() {
+        for (int recipient : recipients) {
+            group.getMember(recipient).addParticipation(this);
+        }
+
+        if (!isRecipient(purchaser)) {
+            purchaser.addParticipation(this);
         }
     }
 
@@ -112,7 +212,7 @@ public class Purchase extends Base {
      * @return A integer value.
      */
     public int numberOfRecipients() {
-        return recipients.size();
+        return recipients.length;
     }
 
     /**
@@ -124,28 +224,44 @@ public class Purchase extends Base {
     protected LinkedHashMap<String, Object> serialize() {
         LinkedHashMap<String, Object> hash_map = new LinkedHashMap<String, Object>();
         hash_map.put("purchaser", purchaser.getName());
-        hash_map.put("recipients", Utils.convertAll(recipients.keySet(), a -> a));
-        hash_map.put("amount", amount);
-        hash_map.put("currency", currency.name());
+        hash_map.put("recipients", getRecipientNames());
+        hash_map.put("amount", amount.toDouble());
+        hash_map.put("currency", amount.getCurrency().name());
         hash_map.put("date", date.toString());
         hash_map.put("title", title);
         return hash_map;
     }
 
     /**
-     * Set purchaser by name
+     * Sorts member ids and removes duplicates, the array may be reused.
+     *
+     * @return A int array.
      */
-    private void setPurchaser(String purchaser) {
-        this.purchaser = group.getMemberByName(purchaser);
+    static int[] normalize(int[] ids) {
+        int[] tmp = ids;
+        Arrays.sort(tmp);
+        int size = 0;
+        for (int i = 0; i < tmp.length; i++) {
+            if (size == 0 || tmp[size - 1] != tmp[i]) {
+                tmp[size++] = tmp[i];
+            }
+        }
+
+        return size == tmp.length ? tmp : Arrays.copyOf(tmp, size);
     }
 
     /**
-     * Set recipients by List of names.
+     * Converts a List of names to member ids.
+     *
+     * @return A int array.
      */
-    private void setRecipients(List<String> recipients) {
-        for (String recipient : recipients) {
-            this.recipients.put(recipient, group.getMemberByName(recipient));
+    private static int[] toIds(Group group, List<String> recipients) {
+        int[] tmp = new int[recipients.size()];
+        for (int i = 0; i < tmp.length; i++) {
+            tmp[i] = group.getMemberByName(recipients.get(i)).getId();
         }
+
+        return tmp;
     }
 
     /**
@@ -155,22 +271,51 @@ public class Purchase extends Base {
      */
     @Override
     public String toString() {
-        String tmp = String.format("%s (%s) %s: %.2f%s -> %s",
-                title, date, purchaser.getName(), amount, currency,
-                String.join(", ", recipients.keySet()));
+        String tmp = String.format("%s (%s) %s: %s -> %s",
+                title, date, purchaser.getName(), amount,
+                String.join(", ", getRecipientNames()));
 
         return tmp;
     }
 
+    /**
+     * Updates all properties and rebooks the Purchase.
+     */
+    protected void update(String title, String purchaser, List<String> recipients,
+            Money amount, TimeStamp date) {
+        // resolve and check everything relinking needs before unlinking to
+        // keep the state on failure
+        if (title == null) {
+            throw new RuntimeException("No title provided!");
+        }
+        Member tmp_purchaser = group.getMemberByName(purchaser);
+        int[] tmp_recipients = normalize(toIds(group, recipients));
+        if (tmp_recipients.length == 0) {
+            throw new RuntimeException("No recipients provided!");
+        }
+        int tmp_segment = group.getSegment(amount.getCurrency(), date);
+
+        unlink();
+        this.title = title;
+        this.purchaser = tmp_purchaser;
+        this.recipients = tmp_recipients;
+        this.amount = amount;
+        this.segment = tmp_segment;
+        this.date = date;
+        link();
+    }
+
     /**
      * Unlink this Purchase from all members.
      */
     protected void unlink() {
-        HashSet<Member> members = new HashSet<Member>(recipients.values());
-        members.add(purchaser);
+        for (int recipient : recipients) {
+            group.getMember(recipient).removeParticipation(this);
+        }
 
-        for (Member member : members) {
-            member.removeParticipation(this);
+        if (!isRecipient(purchaser)) {
+            purchaser.removeParticipation(this);
         }
+        book(-1);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,491 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import javasplit.utils.Currency;
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+
+/**
+ * Streaming import of purchases and transfers from CSV or Json lines.
+ *
+ * CSV input starts with a header row naming the columns title, purchaser,
+ * recipients (separated by ;), amount, date and the optional currency
+ * (default: group currency) and type (purchase or transfer). Json lines
+ * hold one object per line with the same keys, recipients being an array.
+ * The format is detected from the first line.
+ *
+ * Member names are resolved through a dictionary built once per import and
+ * recipient lists and amounts are cached by their text, so recurring rows
+ * share one id array and amount. The caches are cleared once they hold
+ * cache_size texts to bound the memory of large imports. Rows are parsed
+ * into batches, each batch is validated completely before its valid rows
+ * are linked. Invalid rows are reported by line number and skipped.
+ */
+public final class PurchaseImporter {
+    private static final int batch_size = 1024;
+    private static final int cache_size = 4096;
+    private static final String[] columns = { "title", "purchaser", "recipients", "amount", "date", "currency", "type" };
+
+    private Group group;
+    private HashMap<String, Member> names = new HashMap<String, Member>();
+    private HashMap<String, int[]> recipients_cache = new HashMap<String, int[]>();
+    private HashMap<String, Money> amounts_cache = new HashMap<String, Money>();
+    private ArrayList<Row> batch = new ArrayList<Row>(batch_size);
+    private Result result = new Result();
+    private int[] indices;
+
+    /**
+     * Result of an import with the number of imported rows and the errors
+     * by line number.
+     */
+    public static final class Result {
+        private long imported = 0;
+        private LinkedHashMap<Long, String> errors = new LinkedHashMap<Long, String>();
+
+        /**
+         * Gets the error messages by line number.
+         *
+         * @return A Map of type Long and String.
+         */
+        public Map<Long, String> getErrors() {
+            return Collections.unmodifiableMap(errors);
+        }
+
+        /**
+         * Gets the number of imported rows.
+         *
+         * @return A long value.
+         */
+        public long getImported() {
+            return imported;
+        }
+
+        /**
+         * Checks any row to have failed.
+         *
+         * @return A boolean flag.
+         */
+        public boolean hasErrors() {
+            return !errors.isEmpty();
+        }
+    }
+
+    /**
+     * Parsed row of an import.
+     */
+    private static final class Row {
+        private long line;
+        private boolean transfer = false;
+        private String title;
+        private Member purchaser;
+        private int[] recipients;
+        private Money amount;
+        private TimeStamp date;
+    }
+
+    /**
+     * Initialize a PurchaseImporter object for a group.
+     */
+    PurchaseImporter(Group group) {
+        this.group = group;
+        for (Member member : group.getMembers()) {
+            names.put(member.getName(), member);
+        }
+    }
+
+    /**
+     * Reads all rows and links the valid ones.
+     *
+     * @return A Result object.
+     */
+    Result read(Reader reader) throws IOException {
+        BufferedReader input = new BufferedReader(reader, 1 << 16);
+        Boolean json = null;
+        String line;
+        long number = 0;
+
+        while ((line = input.readLine()) != null) {
+            number++;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            if (json == null) {
+                json = line.stripLeading().startsWith("{");
+                if (!json) {
+                    readHeader(line);
+                    continue;
+                }
+            }
+
+            try {
+                Row row = json ? parseJson(line) : parseCsv(line);
+                row.line = number;
+                batch.add(row);
+            } catch (IOException | RuntimeException e) {
+                result.errors.put(number, e.getMessage());
+            }
+
+            if (batch.size() == batch_size) {
+                flush();
+            }
+        }
+        flush();
+
+        return result;
+    }
+
+    /**
+     * Validates the batch and links its valid rows.
+     */
+    private void flush() {
+        ArrayList<Row> valid = new ArrayList<Row>(batch.size());
+        for (Row row : batch) {
+            try {
+                validate(row);
+                valid.add(row);
+            } catch (RuntimeException e) {
+                result.errors.put(row.line, e.getMessage());
+            }
+        }
+
+        for (Row row : valid) {
+            Purchase purchase = row.transfer
+                    ? new Transfer(group, row.title, row.purchaser, row.recipients[0], row.amount, row.date)
+                    : new Purchase(group, row.title, row.purchaser, row.recipients, row.amount, row.date);
+            group.appendImported(purchase);
+        }
+
+        result.imported += valid.size();
+        batch.clear();
+    }
+
+    /**
+     * Parses a CSV row.
+     *
+     * @return A Row object.
+     */
+    private Row parseCsv(String line) {
+        ArrayList<String> fields = split(line);
+        Row row = new Row();
+
+        row.title = field(fields, 0);
+        row.purchaser = resolve(field(fields, 1));
+        row.recipients = resolveAll(field(fields, 2));
+        String currency = field(fields, 5);
+        row.amount = toMoney(field(fields, 3), currency == null || currency.isEmpty() ? null : toCurrency(currency));
+        row.date = toDate(field(fields, 4));
+        row.transfer = toTransfer(field(fields, 6));
+
+        return row;
+    }
+
+    /**
+     * Parses a Json line.
+     *
+     * @return A Row object.
+     */
+    private Row parseJson(String line) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(line));
+        Row row = new Row();
+        String amount = null;
+        Currency currency = null;
+        String date = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title":
+                    row.title = reader.nextString();
+                    break;
+                case "purchaser":
+                    row.purchaser = resolve(reader.nextString());
+                    break;
+                case "recipients":
+                    StringBuilder tmp = new StringBuilder();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        tmp.append(tmp.length() == 0 ? "" : ";").append(reader.nextString());
+                    }
+                    reader.endArray();
+                    row.recipients = resolveAll(tmp.toString());
+                    break;
+                case "amount":
+                    amount = reader.nextString();
+                    break;
+                case "currency":
+                    currency = toCurrency(reader.nextString());
+                    break;
+                case "date":
+                    date = reader.nextString();
+                    break;
+                case "type":
+                    row.transfer = toTransfer(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new RuntimeException("Trailing characters!");
+        }
+
+        if (row.title == null || row.purchaser == null || row.recipients == null) {
+            throw new RuntimeException("Missing title, purchaser or recipients!");
+        }
+        row.amount = toMoney(amount, currency);
+        row.date = toDate(date);
+
+        return row;
+    }
+
+    /**
+     * Reads the CSV header row.
+     */
+    private void readHeader(String line) {
+        ArrayList<String> fields = split(line);
+        indices = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indices[i] = fields.indexOf(columns[i]);
+            if (indices[i] < 0 && i < 5) {
+                throw new RuntimeException(String.format("Missing CSV column \"%s\"!", columns[i]));
+            }
+        }
+    }
+
+    /**
+     * Gets a field of a CSV row by column.
+     *
+     * @return A string or null for an absent optional column.
+     */
+    private String field(ArrayList<String> fields, int column) {
+        int index = indices[column];
+        if (index < 0) {
+            return null;
+        }
+
+        if (index >= fields.size()) {
+            throw new RuntimeException(String.format("Missing value of column \"%s\"!", columns[column]));
+        }
+
+        return fields.get(index);
+    }
+
+    /**
+     * Resolves a member name through the dictionary.
+     *
+     * @return A Member object.
+     */
+    private Member resolve(String name) {
+        Member member = names.get(name.strip());
+        if (member == null) {
+            throw new RuntimeException(String.format("Unknown member \"%s\"!", name));
+        }
+
+        return member;
+    }
+
+    /**
+     * Resolves a list of member names separated by ; to sorted unique ids,
+     * which are cached by the text.
+     *
+     * @return A int array.
+     */
+    private int[] resolveAll(String text) {
+        int[] ids = recipients_cache.get(text);
+        if (ids == null) {
+            String[] tmp = text.split(";");
+            ids = new int[tmp.length];
+            for (int i = 0; i < tmp.length; i++) {
+                ids[i] = resolve(tmp[i]).getId();
+            }
+
+            ids = Purchase.normalize(ids);
+            if (recipients_cache.size() == cache_size) {
+                recipients_cache.clear();
+            }
+            recipients_cache.put(text, ids);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Splits a CSV row into fields, supporting double quoted fields with
+     * doubled quotes as escape.
+     *
+     * @return A ArrayList of strings.
+     */
+    static ArrayList<String> split(String line) {
+        ArrayList<String> fields = new ArrayList<String>();
+        if (line.indexOf('"') < 0) {
+            int start = 0;
+            for (int end = line.indexOf(','); end >= 0; end = line.indexOf(',', start)) {
+                fields.add(line.substring(start, end));
+                start = end + 1;
+            }
+            fields.add(line.substring(start));
+
+            return fields;
+        }
+
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char tmp = line.charAt(i);
+            if (quoted) {
+                if (tmp != '"') {
+                    field.append(tmp);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (tmp == '"') {
+                quoted = true;
+            } else if (tmp == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(tmp);
+            }
+        }
+
+        if (quoted) {
+            throw new RuntimeException("Unterminated quoted field!");
+        }
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    /**
+     * Converts a currency name.
+     *
+     * @return A Currency object.
+     */
+    private static Currency toCurrency(String name) {
+        try {
+            return Currency.valueOf(name.strip());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException(String.format("Unknown currency \"%s\"!", name));
+        }
+    }
+
+    /**
+     * Converts a date string.
+     *
+     * @return A TimeStamp object.
+     */
+    private static TimeStamp toDate(String date) {
+        if (date == null) {
+            throw new RuntimeException("Missing date!");
+        }
+
+        try {
+            return new TimeStamp(date.strip());
+        } catch (RuntimeException e) {
+            throw new RuntimeException(String.format("Invalid date \"%s\"!", date));
+        }
+    }
+
+    /**
+     * Converts an amount string in the given or group currency, the amounts
+     * are cached by the text.
+     *
+     * @return A Money object.
+     */
+    private Money toMoney(String amount, Currency currency) {
+        if (amount == null) {
+            throw new RuntimeException("Missing amount!");
+        }
+
+        Currency target = currency == null ? group.getCurrency() : currency;
+        Money money = amounts_cache.get(amount);
+        if (money != null && money.getCurrency() == target) {
+            return money;
+        }
+
+        double tmp;
+        try {
+            tmp = Double.parseDouble(amount.strip());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException(String.format("Invalid amount \"%s\"!", amount));
+        }
+
+        if (!Double.isFinite(tmp)) {
+            throw new RuntimeException(String.format("Invalid amount \"%s\"!", amount));
+        }
+
+        money = Money.of(tmp, target);
+        if (amounts_cache.size() == cache_size) {
+            amounts_cache.clear();
+        }
+        amounts_cache.put(amount, money);
+
+        return money;
+    }
+
+    /**
+     * Converts the type column to the transfer flag.
+     *
+     * @return A boolean flag.
+     */
+    private static boolean toTransfer(String type) {
+        if (type == null || type.isBlank() || type.strip().equalsIgnoreCase("purchase")) {
+            return false;
+        } else if (type.strip().equalsIgnoreCase("transfer")) {
+            return true;
+        }
+
+        throw new RuntimeException(String.format("Unknown type \"%s\"!", type));
+    }
+
+    /**
+     * Validates a row against the group.
+     */
+    private void validate(Row row) {
+        if (row.transfer && row.recipients.length != 1) {
+            throw new RuntimeException("Transfer requires exactly one recipient!");
+        }
+
+        group.getSegment(row.amount.getCurrency(), row.date);
+    }
+}
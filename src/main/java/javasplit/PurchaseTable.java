@@ -0,0 +1,415 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import javasplit.utils.Currency;
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+import javasplit.utils.Utils;
+
+/**
+ * PurchaseTable class holding a snapshot of the purchases and transfers of a
+ * group in parallel primitive arrays for analytics.
+ *
+ * The table copies the rows when it is built and is detached from the group
+ * afterwards: later changes of the purchases and transfers are not reflected,
+ * only the members, currency and exchange rates are still read from the
+ * group. The exchange rate segment of every row is stored as a column when
+ * the row is added and refreshed once the group gains a rate point, so
+ * aggregate scans run over the primitive columns without per-row objects or
+ * rate lookups. Rows are read through a View, which returns primitives and
+ * is moved between rows, so one view serves a whole scan.
+ */
+public final class PurchaseTable {
+    private static final Currency[] currencies = Currency.values();
+    private Group group;
+    private int size = 0;
+    private long[] amounts = new long[16];
+    private byte[] currency_ids = new byte[16];
+    private long[] dates = new long[16];
+    private int[] purchasers = new int[16];
+    private int[] offsets = new int[17];
+    private int[] recipients = new int[16];
+    private int[] segments = new int[16];
+    private int number_of_segments = 1;
+    private String[] titles = new String[16];
+    private BitSet transfers = new BitSet();
+
+    /**
+     * Initialize an empty PurchaseTable object for a group.
+     */
+    public PurchaseTable(Group group) {
+        this.group = group;
+        this.number_of_segments = group.numberOfSegments();
+    }
+
+    /**
+     * Gets a table holding all purchases and transfers of a group.
+     *
+     * @return A PurchaseTable object.
+     */
+    public static PurchaseTable of(Group group) {
+        PurchaseTable table = new PurchaseTable(group);
+        for (Purchase purchase : group.getPurchases()) {
+            table.add(purchase, false);
+        }
+
+        for (Transfer transfer : group.getTransfers()) {
+            table.add(transfer, true);
+        }
+
+        return table;
+    }
+
+    /**
+     * Adds a purchase row to the table.
+     *
+     * @return A integer value of the row.
+     */
+    public int addPurchase(String title, int purchaser, int[] recipients, Money amount, TimeStamp date) {
+        return add(title, purchaser, recipients, amount, date, false);
+    }
+
+    /**
+     * Adds a transfer row to the table.
+     *
+     * @return A integer value of the row.
+     */
+    public int addTransfer(String title, int purchaser, int recipient, Money amount, TimeStamp date) {
+        return add(title, purchaser, new int[] { recipient }, amount, date, true);
+    }
+
+    /**
+     * Gets the balances of all members in minor units of the group currency.
+     * The raw amounts are summed per member and exchange rate segment and
+     * converted once, the same way the group does.
+     *
+     * @return A long array indexed by member id.
+     */
+    public long[] getBalances() {
+        int number_of_members = group.getNumberOfMembers();
+        updateSegments();
+
+        long[] nets = new long[number_of_members * number_of_segments];
+        for (int row = 0; row < size; row++) {
+            long amount = amounts[row];
+            int segment = segments[row];
+            nets[purchasers[row] * number_of_segments + segment] += amount;
+
+            // largest remainder split in recipient order
+            int count = offsets[row + 1] - offsets[row];
+            long share = amount / count;
+            long remainder = amount % count;
+            for (int i = 0; i < count; i++) {
+                long tmp = share + (i < Math.abs(remainder) ? Long.signum(remainder) : 0);
+                nets[recipients[offsets[row] + i] * number_of_segments + segment] -= tmp;
+            }
+        }
+
+        double[] exact = new double[number_of_members];
+        for (int member = 0; member < number_of_members; member++) {
+            for (int segment = 0; segment < number_of_segments; segment++) {
+                exact[member] += nets[member * number_of_segments + segment] * group.getMultiplier(segment);
+            }
+        }
+
+        return Utils.roundPreservingSum(exact);
+    }
+
+    /**
+     * Gets the list of pending balances using the settlement engine of the
+     * group.
+     *
+     * @return A List of type Balance.
+     */
+    public List<Balance> getPendingBalances() {
+        return group.getSettlementEngine().settle(group, group.getMembers(), getBalances());
+    }
+
+    /**
+     * Gets the group turnover.
+     *
+     * @return A double value.
+     */
+    public double getTurnover() {
+        updateSegments();
+        long[] totals = new long[number_of_segments];
+        for (int row = 0; row < size; row++) {
+            if (!transfers.get(row)) {
+                totals[segments[row]] += amounts[row];
+            }
+        }
+
+        double turnover = 0.0;
+        for (int segment = 0; segment < totals.length; segment++) {
+            turnover += totals[segment] * group.getMultiplier(segment);
+        }
+
+        return new Money((long) Math.rint(turnover), group.getCurrency()).toDouble();
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return A integer value.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets a new view positioned at a row, which is moved to other rows
+     * through moveTo instead of creating a view per row.
+     *
+     * @return A View object.
+     */
+    public View view(int row) {
+        View view = new View();
+        view.moveTo(row);
+        return view;
+    }
+
+    /**
+     * Adds a purchase or transfer object as a row.
+     */
+    private void add(Purchase purchase, boolean transfer) {
+        add(purchase.title, purchase.purchaser.getId(), purchase.recipients,
+                purchase.amount, purchase.date, transfer);
+    }
+
+    /**
+     * Adds a row to the table.
+     *
+     * @return A integer value of the row.
+     */
+    private int add(String title, int purchaser, int[] recipients, Money amount, TimeStamp date,
+            boolean transfer) {
+        // fail early on missing exchange rates and unknown members
+        updateSegments();
+        int segment = group.getSegment(amount.getCurrency(), date);
+        checkMember(purchaser);
+
+        int[] tmp = recipients.clone();
+        Arrays.sort(tmp);
+        int count = 0;
+        for (int i = 0; i < tmp.length; i++) {
+            checkMember(tmp[i]);
+            if (count == 0 || tmp[count - 1] != tmp[i]) {
+                tmp[count++] = tmp[i];
+            }
+        }
+
+        if (count == 0) {
+            throw new RuntimeException("No recipients provided!");
+        }
+
+        if (size == amounts.length) {
+            int capacity = size * 2;
+            amounts = Arrays.copyOf(amounts, capacity);
+            currency_ids = Arrays.copyOf(currency_ids, capacity);
+            dates = Arrays.copyOf(dates, capacity);
+            purchasers = Arrays.copyOf(purchasers, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+            segments = Arrays.copyOf(segments, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+        }
+
+        int end = offsets[size] + count;
+        if (end > this.recipients.length) {
+            this.recipients = Arrays.copyOf(this.recipients, Math.max(end, this.recipients.length * 2));
+        }
+
+        System.arraycopy(tmp, 0, this.recipients, offsets[size], count);
+        amounts[size] = amount.getUnits();
+        currency_ids[size] = (byte) amount.getCurrency().ordinal();
+        dates[size] = date.getEpochSecond();
+        purchasers[size] = purchaser;
+        offsets[size + 1] = end;
+        segments[size] = segment;
+        titles[size] = title;
+        transfers.set(size, transfer);
+
+        return size++;
+    }
+
+    /**
+     * Checks a member id to be valid within the group.
+     */
+    private void checkMember(int id) {
+        if (id < 0 || id >= group.getNumberOfMembers()) {
+            throw new RuntimeException(String.format("No member with id %d!", id));
+        }
+    }
+
+    /**
+     * Updates the segment column once the group gained a rate point, which
+     * opens a segment and may move rows to it.
+     */
+    private void updateSegments() {
+        int tmp = group.numberOfSegments();
+        if (tmp == number_of_segments) {
+            return;
+        }
+
+        for (int row = 0; row < size; row++) {
+            segments[row] = group.getSegment(currencies[currency_ids[row]], dates[row]);
+        }
+        number_of_segments = tmp;
+    }
+
+    /**
+     * View class reading the columns of the row it is moved to, the getters
+     * return primitives or shared objects without allocating.
+     */
+    public final class View {
+        private int row;
+
+        /**
+         * Initialize a View object.
+         */
+        private View() {
+        }
+
+        /**
+         * Gets the amount in minor units of its currency.
+         *
+         * @return A long value.
+         */
+        public long getAmountUnits() {
+            return amounts[row];
+        }
+
+        /**
+         * Gets the currency of the amount.
+         *
+         * @return A Currency object.
+         */
+        public Currency getCurrency() {
+            return currencies[currency_ids[row]];
+        }
+
+        /**
+         * Gets the date in seconds since the epoch.
+         *
+         * @return A long value.
+         */
+        public long getEpochSecond() {
+            return dates[row];
+        }
+
+        /**
+         * Gets the amount in minor units of the group currency.
+         *
+         * @return A long value.
+         */
+        public long getExchangedUnits() {
+            updateSegments();
+            return group.exchangeUnits(amounts[row], segments[row]);
+        }
+
+        /**
+         * Gets the purchaser.
+         *
+         * @return A Member object.
+         */
+        public Member getPurchaser() {
+            return group.getMember(purchasers[row]);
+        }
+
+        /**
+         * Gets the purchaser id.
+         *
+         * @return A integer value.
+         */
+        public int getPurchaserId() {
+            return purchasers[row];
+        }
+
+        /**
+         * Gets the row.
+         *
+         * @return A integer value.
+         */
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * Gets the title.
+         *
+         * @return A string.
+         */
+        public String getTitle() {
+            return titles[row];
+        }
+
+        /**
+         * Checks the member to be a recipient.
+         *
+         * @return A boolean flag.
+         */
+        public boolean isRecipient(Member member) {
+            return isRecipient(member.getId());
+        }
+
+        /**
+         * Checks the member id to be a recipient.
+         *
+         * @return A boolean flag.
+         */
+        public boolean isRecipient(int id) {
+            return Arrays.binarySearch(recipients, offsets[row], offsets[row + 1], id) >= 0;
+        }
+
+        /**
+         * Checks the row to be a transfer.
+         *
+         * @return A boolean flag.
+         */
+        public boolean isTransfer() {
+            return transfers.get(row);
+        }
+
+        /**
+         * Moves the view to a row.
+         */
+        public void moveTo(int row) {
+            if (row < 0 || row >= size) {
+                throw new RuntimeException(String.format("No row %d!", row));
+            }
+            this.row = row;
+        }
+
+        /**
+         * Gets the number of recipients.
+         *
+         * @return A integer value.
+         */
+        public int numberOfRecipients() {
+            return offsets[row + 1] - offsets[row];
+        }
+    }
+}
@@ -0,0 +1,162 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.util.Collections;
+import java.util.List;
+
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+
+/**
+ * Statement class holding a page of the date ordered history of a member.
+ */
+public final class Statement {
+    private List<Row> rows;
+    private int next_cursor;
+
+    /**
+     * Row of a statement with the effect of a purchase or transfer on the
+     * member balance.
+     */
+    public static final class Row {
+        private TimeStamp date;
+        private String title;
+        private String counterpart;
+        private Money amount;
+        private Money balance;
+        private boolean transfer;
+
+        /**
+         * Initialize a Row object.
+         */
+        Row(TimeStamp date, String title, String counterpart, Money amount, Money balance, boolean transfer) {
+            this.date = date;
+            this.title = title;
+            this.counterpart = counterpart;
+            this.amount = amount;
+            this.balance = balance;
+            this.transfer = transfer;
+        }
+
+        /**
+         * Gets the signed amount in group currency, the paid amount minus the
+         * owed share.
+         *
+         * @return A Money object.
+         */
+        public Money getAmount() {
+            return amount;
+        }
+
+        /**
+         * Gets the running balance in group currency after this row.
+         *
+         * @return A Money object.
+         */
+        public Money getBalance() {
+            return balance;
+        }
+
+        /**
+         * Gets the counterpart, the purchaser or the other recipients.
+         *
+         * @return A string.
+         */
+        public String getCounterpart() {
+            return counterpart;
+        }
+
+        /**
+         * Gets the date.
+         *
+         * @return A TimeStamp object.
+         */
+        public TimeStamp getDate() {
+            return date;
+        }
+
+        /**
+         * Gets the title.
+         *
+         * @return A string.
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * Checks the row to be a transfer.
+         *
+         * @return A boolean flag.
+         */
+        public boolean isTransfer() {
+            return transfer;
+        }
+
+        /**
+         * Converts to an equivalent string.
+         *
+         * @return A string.
+         */
+        @Override
+        public String toString() {
+            return String.format("%s %s (%s): %s -> %s", date, title, counterpart, amount, balance);
+        }
+    }
+
+    /**
+     * Initialize a Statement object.
+     */
+    Statement(List<Row> rows, int next_cursor) {
+        this.rows = rows;
+        this.next_cursor = next_cursor;
+    }
+
+    /**
+     * Gets the cursor of the following page, valid until the next change of
+     * the group.
+     *
+     * @return A integer value, -1 after the last page.
+     */
+    public int getNextCursor() {
+        return next_cursor;
+    }
+
+    /**
+     * Gets the rows.
+     *
+     * @return A List of type Row.
+     */
+    public List<Row> getRows() {
+        return Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * Checks a following page to exist.
+     *
+     * @return A boolean flag.
+     */
+    public boolean hasNext() {
+        return next_cursor >= 0;
+    }
+}
@@ -0,0 +1,210 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index from the title tokens to the purchases.
+ *
+ * Titles are split into lower case tokens of letters and digits. The
+ * sorted term map answers exact terms by lookup and prefix terms by a range
+ * of terms. The index is built on the first search and then maintained by
+ * the group on every link and unlink of a purchase.
+ */
+final class TitleIndex {
+    private TreeMap<String, HashSet<Purchase>> postings = new TreeMap<String, HashSet<Purchase>>();
+
+    /**
+     * Initialize a TitleIndex object over the purchases.
+     */
+    TitleIndex(List<Purchase> purchases) {
+        for (Purchase purchase : purchases) {
+            add(purchase);
+        }
+    }
+
+    /**
+     * Adds a purchase to the postings of its title tokens.
+     */
+    void add(Purchase purchase) {
+        for (String token : tokenize(purchase.title)) {
+            postings.computeIfAbsent(token, a -> new HashSet<Purchase>()).add(purchase);
+        }
+    }
+
+    /**
+     * Removes a purchase from the postings of its title tokens.
+     */
+    void remove(Purchase purchase) {
+        for (String token : tokenize(purchase.title)) {
+            HashSet<Purchase> tmp = postings.get(token);
+            if (tmp != null && tmp.remove(purchase) && tmp.isEmpty()) {
+                postings.remove(token);
+            }
+        }
+    }
+
+    /**
+     * Gets the purchases matching all terms of a query, ordered by date. A
+     * term ending with * matches tokens starting with it, other terms match
+     * whole tokens. Negative member ids do not filter.
+     *
+     * The term with the fewest postings drives the search, the other terms
+     * are checked per candidate: whole tokens by a posting lookup, prefixes
+     * on the tokens of the candidate title.
+     *
+     * @return A List of type Purchase.
+     */
+    List<Purchase> search(String query, int purchaser, int recipient) {
+        ArrayList<String> terms = new ArrayList<String>();
+        ArrayList<Boolean> prefixes = new ArrayList<Boolean>();
+        for (String word : query.trim().split("\\s+")) {
+            List<String> tokens = tokenize(word);
+            for (int i = 0; i < tokens.size(); i++) {
+                terms.add(tokens.get(i));
+                prefixes.add(word.endsWith("*") && i == tokens.size() - 1);
+            }
+        }
+
+        ArrayList<Purchase> tmp = new ArrayList<Purchase>();
+        if (terms.isEmpty()) {
+            return tmp;
+        }
+
+        int driver = 0;
+        long driver_size = Long.MAX_VALUE;
+        for (int i = 0; i < terms.size(); i++) {
+            long size = 0;
+            for (HashSet<Purchase> posting : range(terms.get(i), prefixes.get(i)).values()) {
+                size += posting.size();
+            }
+
+            if (size < driver_size) {
+                driver = i;
+                driver_size = size;
+            }
+        }
+
+        SortedMap<String, HashSet<Purchase>> driver_range = range(terms.get(driver), prefixes.get(driver));
+        HashSet<Purchase> seen = driver_range.size() > 1 ? new HashSet<Purchase>() : null;
+        for (HashSet<Purchase> posting : driver_range.values()) {
+            for (Purchase purchase : posting) {
+                if (purchaser >= 0 && purchase.purchaser.getId() != purchaser) {
+                    continue;
+                } else if (recipient >= 0 && Arrays.binarySearch(purchase.recipients, recipient) < 0) {
+                    continue;
+                } else if (seen != null && !seen.add(purchase)) {
+                    continue;
+                }
+
+                if (matches(purchase, terms, prefixes, driver)) {
+                    tmp.add(purchase);
+                }
+            }
+        }
+
+        tmp.sort(Comparator.comparingLong(a -> a.date.getEpochSecond()));
+        return tmp;
+    }
+
+    /**
+     * Splits a title into lower case tokens of letters and digits.
+     *
+     * @return A List of type String.
+     */
+    static List<String> tokenize(String title) {
+        ArrayList<String> tokens = new ArrayList<String>(4);
+        int start = -1;
+        for (int i = 0; i <= title.length(); i++) {
+            boolean letter = i < title.length() && Character.isLetterOrDigit(title.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                tokens.add(title.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Checks a purchase to match all terms except the driving one.
+     *
+     * @return A boolean flag.
+     */
+    private boolean matches(Purchase purchase, List<String> terms, List<Boolean> prefixes, int driver) {
+        for (int i = 0; i < terms.size(); i++) {
+            if (i == driver) {
+                continue;
+            } else if (prefixes.get(i)) {
+                if (!hasPrefix(purchase.title, terms.get(i))) {
+                    return false;
+                }
+            } else {
+                HashSet<Purchase> posting = postings.get(terms.get(i));
+                if (posting == null || !posting.contains(purchase)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks a title to hold a token starting with a prefix, comparing the
+     * characters ignoring case without splitting the title.
+     *
+     * @return A boolean flag.
+     */
+    private static boolean hasPrefix(String title, String prefix) {
+        boolean previous = false;
+        for (int i = 0; i <= title.length() - prefix.length(); i++) {
+            boolean letter = Character.isLetterOrDigit(title.charAt(i));
+            if (letter && !previous && title.regionMatches(true, i, prefix, 0, prefix.length())) {
+                return true;
+            }
+            previous = letter;
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the postings of a whole token or of all tokens starting with a
+     * prefix.
+     *
+     * @return A SortedMap of type String and HashSet.
+     */
+    private SortedMap<String, HashSet<Purchase>> range(String term, boolean prefix) {
+        return postings.subMap(term, prefix ? term + Character.MAX_VALUE : term + Character.MIN_VALUE);
+    }
+}
@@ -21,7 +21,7 @@
 // SOFTWARE.
 package javasplit;
 
-import javasplit.utils.Currency;
+import javasplit.utils.Money;
 import javasplit.utils.TimeStamp;
 import javasplit.utils.Utils;
 
@@ -33,7 +33,24 @@ public class Transfer extends Purchase {
      * Initialize a Transfer object.
      */
     Transfer(Group group, String title, String purchaser, String recipient,
-            Double amount, Currency currency, TimeStamp date) {
-        super(group, title, purchaser, Utils.atLeast1D(recipient), amount, currency, date);
+            Money amount, TimeStamp date) {
+        super(group, title, purchaser, Utils.atLeast1D(recipient), amount, date);
+    }
+
+    /**
+     * Initialize a Transfer object from a resolved purchaser and recipient id.
+     */
+    Transfer(Group group, String title, Member purchaser, int recipient,
+            Money amount, TimeStamp date) {
+        this(group, title, purchaser, recipient, amount, date, true);
+    }
+
+    /**
+     * Initialize a Transfer object from a resolved purchaser and recipient
+     * id, optionally without linking it.
+     */
+    Transfer(Group group, String title, Member purchaser, int recipient,
+            Money amount, TimeStamp date, boolean link) {
+        super(group, title, purchaser, new int[] { recipient }, amount, date, link);
     }
 }
\ No newline at end of file
@@ -23,18 +23,23 @@ package javasplit.utils;
 
 import java.time.LocalDateTime;
 import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
- * Base class defining required package class methods.
+ * Base class defining required package class methods. The time stamp is
+ * taken from the clock on its first access unless a loader sets it before,
+ * so loaded objects never read the clock. Concurrent first accesses agree
+ * on one stamp.
  */
 public class Base {
-    private TimeStamp stamp;
+    private static final AtomicReferenceFieldUpdater<Base, TimeStamp> stamps = AtomicReferenceFieldUpdater
+            .newUpdater(Base.class, TimeStamp.class, "stamp");
+    private volatile TimeStamp stamp = null;
 
     /**
      * Initialize a Base object.
      */
     public Base() {
-        stamp = new TimeStamp();
     }
 
     /**
@@ -47,18 +52,40 @@ public class Base {
         return hash_map;
     }
 
+    /**
+     * Gets the time stamp of the object.
+     *
+     * @return A TimeStamp object.
+     */
+    public TimeStamp getStamp() {
+        TimeStamp tmp = stamp;
+        if (tmp == null) {
+            stamps.compareAndSet(this, null, TimeStamp.now());
+            tmp = stamp;
+        }
+
+        return tmp;
+    }
+
+    /**
+     * Sets the time stamp of the object.
+     */
+    public void setStamp(TimeStamp stamp) {
+        this.stamp = stamp;
+    }
+
     /**
      * Sets the time from a string.
      */
     public void setTime(String time_string) {
-        stamp.setTime(time_string);
+        stamp = new TimeStamp(time_string);
     }
 
     /**
      * Sets the time from a DateTime object.
      */
     public void setTime(LocalDateTime time) {
-        stamp.setTime(time);
+        stamp = new TimeStamp(time);
     }
 
     /**
@@ -68,7 +95,7 @@ public class Base {
      */
     public final LinkedHashMap<String, Object> toDict() {
         LinkedHashMap<String, Object> tmp = serialize();
-        tmp.put("stamp", stamp.toString());
+        tmp.put("stamp", getStamp().toString());
         return tmp;
     }
 
@@ -79,6 +106,6 @@ public class Base {
      */
     @Override
     public String toString() {
-        return String.format("<%s stamp=%s>", getClass().getName(), stamp.toString());
+        return String.format("<%s stamp=%s>", getClass().getName(), getStamp().toString());
     }
 }
\ No newline at end of file
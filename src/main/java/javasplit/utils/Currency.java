@@ -25,23 +25,46 @@ package javasplit.utils;
  * Currency enumeration class.
  */
 public enum Currency {
-    Euro("€"),
-    USD("$");
+    Euro("€", 2),
+    USD("$", 2);
 
     private String symbol;
+    private int digits;
+    private long scale;
 
     /**
      * Initialize a Currency object.
      */
     Currency() {
-        symbol = name();
+        this(null, 2);
     }
 
     /**
-     * Initialize a Currency object with a given symbol.
+     * Initialize a Currency object with a given symbol and number of
+     * fraction digits.
      */
-    Currency(String symbol) {
-        this.symbol = symbol;
+    Currency(String symbol, int digits) {
+        this.symbol = symbol == null ? name() : symbol;
+        this.digits = digits;
+        this.scale = (long) Math.pow(10, digits);
+    }
+
+    /**
+     * Gets the number of fraction digits of the minor unit.
+     *
+     * @return A integer value.
+     */
+    public int getDigits() {
+        return digits;
+    }
+
+    /**
+     * Gets the number of minor units per major unit.
+     *
+     * @return A long value.
+     */
+    public long getScale() {
+        return scale;
     }
 
     /**
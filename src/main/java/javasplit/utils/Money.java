@@ -0,0 +1,216 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+package javasplit.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money class for immutable fixed-point amounts of a currency.
+ */
+public final class Money implements Comparable<Money> {
+    private final long units;
+    private final Currency currency;
+
+    /**
+     * Initialize a Money object from minor units of a currency.
+     */
+    public Money(long units, Currency currency) {
+        this.units = units;
+        this.currency = currency;
+    }
+
+    /**
+     * Gets the Money object nearest to a decimal amount.
+     *
+     * @return A Money object.
+     */
+    public static Money of(double amount, Currency currency) {
+        if (!Double.isFinite(amount)) {
+            throw new RuntimeException("Invalid amount provided!");
+        }
+
+        BigDecimal tmp = BigDecimal.valueOf(amount).setScale(currency.getDigits(), RoundingMode.HALF_EVEN);
+        return new Money(tmp.unscaledValue().longValueExact(), currency);
+    }
+
+    /**
+     * Gets the zero amount of a currency.
+     *
+     * @return A Money object.
+     */
+    public static Money zero(Currency currency) {
+        return new Money(0, currency);
+    }
+
+    /**
+     * Adds another amount of the same currency.
+     *
+     * @return A Money object.
+     */
+    public Money add(Money other) {
+        checkCurrency(other);
+        return new Money(Math.addExact(units, other.units), currency);
+    }
+
+    /**
+     * Compares to another amount of the same currency.
+     *
+     * @return A integer value.
+     */
+    @Override
+    public int compareTo(Money other) {
+        checkCurrency(other);
+        return Long.compare(units, other.units);
+    }
+
+    /**
+     * Checks for equality with another object.
+     *
+     * @return A boolean flag.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Money)) {
+            return false;
+        }
+
+        Money tmp = (Money) other;
+        return units == tmp.units && currency == tmp.currency;
+    }
+
+    /**
+     * Gets the currency.
+     *
+     * @return A Currency object.
+     */
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Gets the amount in minor units.
+     *
+     * @return A long value.
+     */
+    public long getUnits() {
+        return units;
+    }
+
+    /**
+     * Gets the hash code.
+     *
+     * @return A integer value.
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(units) * 31 + currency.hashCode();
+    }
+
+    /**
+     * Checks the amount to be zero.
+     *
+     * @return A boolean flag.
+     */
+    public boolean isZero() {
+        return units == 0;
+    }
+
+    /**
+     * Gets the negated amount.
+     *
+     * @return A Money object.
+     */
+    public Money negate() {
+        return new Money(Math.negateExact(units), currency);
+    }
+
+    /**
+     * Gets the sign of the amount.
+     *
+     * @return A integer value.
+     */
+    public int signum() {
+        return Long.signum(units);
+    }
+
+    /**
+     * Splits the amount into a number of parts summing up to the amount.
+     * The remaining minor units are assigned one by one to the first parts,
+     * which is the largest remainder method for equal shares.
+     *
+     * @return A Money array.
+     */
+    public Money[] split(int parts) {
+        if (parts <= 0) {
+            throw new RuntimeException("Invalid number of parts provided!");
+        }
+
+        long share = units / parts;
+        long remainder = units % parts;
+
+        Money[] tmp = new Money[parts];
+        for (int i = 0; i < parts; i++) {
+            tmp[i] = new Money(share + (i < Math.abs(remainder) ? Long.signum(remainder) : 0), currency);
+        }
+
+        return tmp;
+    }
+
+    /**
+     * Subtracts another amount of the same currency.
+     *
+     * @return A Money object.
+     */
+    public Money subtract(Money other) {
+        checkCurrency(other);
+        return new Money(Math.subtractExact(units, other.units), currency);
+    }
+
+    /**
+     * Converts to an equivalent decimal value.
+     *
+     * @return A double value.
+     */
+    public double toDouble() {
+        return units / (double) currency.getScale();
+    }
+
+    /**
+     * Converts to an equivalent string.
+     *
+     * @return A string.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s%s", BigDecimal.valueOf(units, currency.getDigits()).toPlainString(), currency);
+    }
+
+    /**
+     * Checks another amount to be of the same currency.
+     */
+    private void checkCurrency(Money other) {
+        if (currency != other.currency) {
+            throw new RuntimeException("Currency mismatch provided!");
+        }
+    }
+}
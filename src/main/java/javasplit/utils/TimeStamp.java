@@ -21,42 +21,164 @@
 // SOFTWARE.
 package javasplit.utils;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
 /**
- * TimeStamp class for storing time information.
+ * TimeStamp class for storing time information as immutable value of
+ * seconds since the epoch, a time at the start of a day is a date only.
  */
-public class TimeStamp {
+public final class TimeStamp implements Comparable<TimeStamp> {
     private static String _fmt_date = "dd.MM.yyyy";
     private static String _fmt_time = "HH:mm:ss";
     private static String _fmt = String.format("%s %s", _fmt_date, _fmt_time);
     private static DateTimeFormatter fmt_date = DateTimeFormatter.ofPattern(_fmt_date);
     private static DateTimeFormatter fmt = DateTimeFormatter.ofPattern(_fmt);
-    private LocalDateTime time;
+    private static final int seconds_per_day = 86400;
+    private static volatile Clock clock = new Clock();
+    private final long second;
+    private volatile String string;
 
     /**
      * Initialize a TimeStamp object.</summary>
      *
      */
     public TimeStamp() {
-        setTime(java.time.LocalDateTime.now());
+        this(LocalDateTime.now());
     }
 
     /**
-     * Initialize a TimeStamp object from DateTime object.
+     * Initialize a TimeStamp object from DateTime object, truncated to
+     * seconds.
      */
     public TimeStamp(LocalDateTime time) {
-        setTime(time);
+        second = time.toEpochSecond(ZoneOffset.UTC);
     }
 
     /**
      * Initialize a TimeStamp object from time string.
      */
     public TimeStamp(String time_string) {
-        setTime(time_string);
+        second = parseEpochSecond(time_string);
+    }
+
+    /**
+     * Initialize a TimeStamp object from seconds since the epoch.
+     */
+    private TimeStamp(long second) {
+        this.second = second;
+    }
+
+    /**
+     * Gets a TimeStamp object of the current local time. The instance is
+     * shared within the same second of the clock, so that creating many
+     * entities does not query the time zone rules each time.
+     *
+     * @return A TimeStamp object.
+     */
+    public static TimeStamp now() {
+        Clock tmp = clock;
+        if (System.currentTimeMillis() / 1000 != tmp.system_second) {
+            tmp = new Clock();
+            clock = tmp;
+        }
+
+        return tmp.stamp;
+    }
+
+    /**
+     * Gets a TimeStamp object from seconds since the epoch in UTC.
+     *
+     * @return A TimeStamp object.
+     */
+    public static TimeStamp ofEpochSecond(long second) {
+        return new TimeStamp(second);
+    }
+
+    /**
+     * Parses a string of the fixed layout dd.MM.yyyy[ HH:mm:ss].
+     *
+     * @return A DateTime object.
+     */
+    public static LocalDateTime parse(String time_string) {
+        return LocalDateTime.ofEpochSecond(parseEpochSecond(time_string), 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Parses a string of the fixed layout dd.MM.yyyy[ HH:mm:ss] by reading
+     * the characters directly. Like the SMART resolving formatter a day
+     * beyond the end of the month is clamped to the last day and 24:00:00 is
+     * the start of the next day.
+     *
+     * @return A long value.
+     */
+    public static long parseEpochSecond(String time_string) {
+        int length = time_string.length();
+        if (length != 10 && length != 19) {
+            throw error(time_string, "unexpected length", Math.min(length, 10));
+        }
+
+        int day = digits(time_string, 0, 2);
+        int month = digits(time_string, 3, 2);
+        int year = digits(time_string, 6, 4);
+        separator(time_string, 2, '.');
+        separator(time_string, 5, '.');
+
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        if (length == 19) {
+            separator(time_string, 10, ' ');
+            hour = digits(time_string, 11, 2);
+            separator(time_string, 13, ':');
+            minute = digits(time_string, 14, 2);
+            separator(time_string, 16, ':');
+            second = digits(time_string, 17, 2);
+        }
+
+        if (month < 1 || month > 12) {
+            throw error(time_string, "invalid month", 3);
+        } else if (day < 1 || day > 31) {
+            throw error(time_string, "invalid day", 0);
+        } else if (year < 1) {
+            throw error(time_string, "invalid year", 6);
+        } else if (minute > 59 || second > 59 || hour > 24 || (hour == 24 && (minute > 0 || second > 0))) {
+            throw error(time_string, "invalid time", 11);
+        }
+
+        day = Math.min(day, lengthOfMonth(year, month));
+        return toEpochDay(year, month, day) * seconds_per_day + hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Compares the time with another time stamp.
+     *
+     * @return A integer value.
+     */
+    @Override
+    public int compareTo(TimeStamp other) {
+        return Long.compare(second, other.second);
+    }
+
+    /**
+     * Checks the time to equal another time stamp.
+     *
+     * @return A boolean flag.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof TimeStamp && ((TimeStamp) other).second == second;
+    }
+
+    /**
+     * Gets the seconds since the epoch, treating the time as UTC.
+     *
+     * @return A long value.
+     */
+    public long getEpochSecond() {
+        return second;
     }
 
     /**
@@ -65,40 +187,179 @@ public class TimeStamp {
      * @return A DateTime object.
      */
     public LocalDateTime getTime() {
-        return time;
+        return LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
     }
 
     /**
-     * Sets the time from a string.
+     * Gets the hash code of the time.
+     *
+     * @return A integer value.
      */
-    public void setTime(String time_string) {
-        try {
-            time = LocalDateTime.parse(time_string, fmt);
-        } catch (DateTimeParseException e) {
-            LocalDate tmp = LocalDate.parse(time_string, fmt_date);
-            time = tmp.atStartOfDay();
+    @Override
+    public int hashCode() {
+        return Long.hashCode(second);
+    }
+
+    /**
+     * Checks the time to be at the start of a day.
+     *
+     * @return A boolean flag.
+     */
+    public boolean isDateOnly() {
+        return Math.floorMod(second, seconds_per_day) == 0;
+    }
+
+    /**
+     * Reads a fixed number of decimal digits.
+     *
+     * @return A integer value.
+     */
+    private static int digits(String time_string, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char tmp = time_string.charAt(i);
+            if (tmp < '0' || tmp > '9') {
+                throw error(time_string, "digit expected", i);
+            }
+            value = value * 10 + (tmp - '0');
         }
+
+        return value;
     }
 
     /**
-     * Sets the time from a DateTime object.
+     * Gets a parse exception in the format of the DateTimeFormatter.
+     *
+     * @return A DateTimeParseException object.
      */
-    public void setTime(LocalDateTime time) {
-        this.time = time;
+    private static DateTimeParseException error(String time_string, String reason, int index) {
+        return new DateTimeParseException(
+                String.format("Text '%s' could not be parsed at index %d: %s", time_string, index, reason),
+                time_string, index);
     }
 
     /**
-     * Converts to an equivalent string.
+     * Gets the number of days of a month.
+     *
+     * @return A integer value.
+     */
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    /**
+     * Checks a separator character.
+     */
+    private static void separator(String time_string, int index, char expected) {
+        if (time_string.charAt(index) != expected) {
+            throw error(time_string, String.format("'%c' expected", expected), index);
+        }
+    }
+
+    /**
+     * Gets the days since the epoch of a proleptic Gregorian date.
+     *
+     * @return A long value.
+     */
+    private static long toEpochDay(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long year_of_era = year - era * 400;
+        long day_of_year = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long day_of_era = year_of_era * 365 + year_of_era / 4 - year_of_era / 100 + day_of_year;
+
+        return era * 146097 + day_of_era - 719468;
+    }
+
+    /**
+     * Writes a value as fixed number of decimal digits.
+     */
+    private static void write(char[] buffer, int offset, int count, int value) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Converts to an equivalent string, which is cached. The cache is a
+     * volatile immutable string, concurrent readers racing on the first call
+     * format the same value and publish equal strings.
      *
      * @return A string.
      */
     @Override
     public String toString() {
-        LocalDate tmp = time.toLocalDate();
-        if (time.isEqual(tmp.atStartOfDay())) {
-            return tmp.format(TimeStamp.fmt_date);
-        } else {
-            return time.format(TimeStamp.fmt);
+        String tmp = string;
+        if (tmp == null) {
+            tmp = format();
+            string = tmp;
+        }
+
+        return tmp;
+    }
+
+    /**
+     * Formats the time stamp as dd.MM.yyyy[ HH:mm:ss].
+     *
+     * @return A string.
+     */
+    private String format() {
+        boolean date_only = isDateOnly();
+        long epoch_day = Math.floorDiv(second, seconds_per_day);
+        int time_of_day = Math.floorMod(second, seconds_per_day);
+
+        // proleptic Gregorian date of the epoch day
+        long day_of_epoch = epoch_day + 719468;
+        long era = Math.floorDiv(day_of_epoch, 146097);
+        long day_of_era = day_of_epoch - era * 146097;
+        long year_of_era = (day_of_era - day_of_era / 1460 + day_of_era / 36524 - day_of_era / 146096) / 365;
+        long day_of_year = day_of_era - (365 * year_of_era + year_of_era / 4 - year_of_era / 100);
+        int tmp = (int) (5 * day_of_year + 2) / 153;
+        int day = (int) (day_of_year - (153 * tmp + 2) / 5 + 1);
+        int month = tmp < 10 ? tmp + 3 : tmp - 9;
+        long year = year_of_era + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 1 || year > 9999) {
+            return getTime().format(date_only ? TimeStamp.fmt_date : TimeStamp.fmt);
+        }
+
+        char[] buffer = new char[date_only ? 10 : 19];
+        write(buffer, 0, 2, day);
+        buffer[2] = '.';
+        write(buffer, 3, 2, month);
+        buffer[5] = '.';
+        write(buffer, 6, 4, (int) year);
+        if (!date_only) {
+            buffer[10] = ' ';
+            write(buffer, 11, 2, time_of_day / 3600);
+            buffer[13] = ':';
+            write(buffer, 14, 2, time_of_day / 60 % 60);
+            buffer[16] = ':';
+            write(buffer, 17, 2, time_of_day % 60);
+        }
+
+        return new String(buffer);
+    }
+
+    /**
+     * Clock class for sharing the current time stamp per second of the
+     * system clock.
+     */
+    private static final class Clock {
+        private final long system_second;
+        private final TimeStamp stamp;
+
+        /**
+         * Initialize a Clock object from the current time.
+         */
+        Clock() {
+            system_second = System.currentTimeMillis() / 1000;
+            stamp = new TimeStamp(LocalDateTime.now());
         }
     }
-}
\ No newline at end of file
+}
@@ -22,6 +22,7 @@
 package javasplit.utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
@@ -63,4 +64,37 @@ public final class Utils {
             Function<? super T, ? extends R> functor) {
         return collection.stream().map(functor).collect(Collectors.toList());
     }
+
+    /**
+     * Rounds values to integers whose sum equals the sum of the values
+     * rounded half to even. Values are rounded down and the missing units
+     * are assigned to the largest remainders, ties by the lower index.
+     *
+     * @return A long array.
+     */
+    public static long[] roundPreservingSum(double[] values) {
+        long[] tmp = new long[values.length];
+        double sum = 0.0;
+        long floor_sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+            tmp[i] = (long) Math.floor(values[i]);
+            floor_sum += tmp[i];
+        }
+
+        long missing = (long) Math.rint(sum) - floor_sum;
+        if (missing > 0) {
+            Integer[] order = new Integer[values.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+
+            Arrays.sort(order, (a, b) -> Double.compare(values[b] - tmp[b], values[a] - tmp[a]));
+            for (int i = 0; i < missing; i++) {
+                tmp[order[i % order.length]]++;
+            }
+        }
+
+        return tmp;
+    }
 }
@@ -0,0 +1,763 @@
+// MIT License
+//
+// Copyright (c) 2022 Florian Eigentler
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import javasplit.ConcurrentGroup;
+import javasplit.Group;
+import javasplit.GroupJournal;
+import javasplit.GroupLoader;
+import javasplit.GroupRepository;
+import javasplit.Member;
+import javasplit.Purchase;
+import javasplit.PurchaseTable;
+import javasplit.Statement;
+import javasplit.utils.Currency;
+import javasplit.utils.Money;
+import javasplit.utils.TimeStamp;
+import javasplit.utils.Utils;
+
+@Tag("benchmark")
+public class TestBenchmark {
+    private static int number_of_members = 50;
+
+    /**
+     * Gets the used heap memory after a garbage collection.
+     *
+     * @return A long value.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Gets a group with members and an exchange rate.
+     *
+     * @return A Group object.
+     */
+    private static Group createGroup() {
+        Group group = new Group("Benchmark", "", Currency.Euro);
+        group.setExchangeRate(Currency.USD, 1.19);
+        for (int i = 0; i < number_of_members; i++) {
+            group.addMember(String.format("member_%d", i));
+        }
+        return group;
+    }
+
+    @Test
+    void benchmarkPurchaseTableMemory() {
+        int rows = 1000000;
+        TimeStamp date = new TimeStamp("23.06.2021");
+        Money amount = Money.of(12.34, Currency.Euro);
+
+        // Test: object model footprint
+        long before = usedMemory();
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        List<List<String>> recipients = new ArrayList<List<String>>();
+        for (int i = 0; i < number_of_members; i++) {
+            recipients.add(List.of(names.get(i), names.get((i + 1) % number_of_members),
+                    names.get((i + 2) % number_of_members)));
+        }
+
+        for (int i = 0; i < rows; i++) {
+            group.addPurchase("purchase", names.get(i % number_of_members),
+                    recipients.get(i % number_of_members), amount, date);
+        }
+        long objects = usedMemory() - before;
+        double turnover = group.getTurnover();
+        group = null;
+
+        // Test: columnar footprint
+        before = usedMemory();
+        Group table_group = createGroup();
+        PurchaseTable table = new PurchaseTable(table_group);
+        for (int i = 0; i < rows; i++) {
+            table.addPurchase("purchase", i % number_of_members,
+                    new int[] { i % number_of_members, (i + 1) % number_of_members,
+                            (i + 2) % number_of_members },
+                    amount, date);
+        }
+        long columns = usedMemory() - before;
+        assertTrue(table.getTurnover() == turnover);
+
+        System.out.println(String.format("Objects: %d bytes (%d bytes/purchase)", objects, objects / rows));
+        System.out.println(String.format("Columns: %d bytes (%d bytes/purchase)", columns, columns / rows));
+
+        long start = System.nanoTime();
+        table.getBalances();
+        System.out.println(String.format("Columnar balance scan: %.1f ms",
+                (System.nanoTime() - start) / 1e6));
+        assertTrue(columns < objects);
+    }
+
+    @Test
+    void benchmarkConcurrentGroup() throws InterruptedException {
+        int rows = 200000;
+
+        for (int writers : new int[] { 1, 2, 4, 8 }) {
+            // Test: one lock around the plain group
+            Group locked = createGroup();
+            double locked_rate = ingest(writers, rows, (title, purchaser, recipients, amount, date) -> {
+                synchronized (locked) {
+                    locked.addPurchase(title, purchaser, recipients, amount, date);
+                }
+            });
+
+            // Test: lock free queue drained in batches
+            Group group = createGroup();
+            ConcurrentGroup concurrent = new ConcurrentGroup(group);
+            double concurrent_rate = ingest(writers, rows, (title, purchaser, recipients, amount, date) -> {
+                concurrent.addPurchase(title, purchaser, recipients, amount, date);
+            });
+            concurrent.flush();
+            assertTrue(concurrent.read(a -> a.getPurchases().size()) == rows);
+
+            System.out.println(String.format("Concurrent ingestion with %d writer(s) on %d processor(s): locked %.0f rows/s, concurrent %.0f rows/s",
+                    writers, Runtime.getRuntime().availableProcessors(), locked_rate, concurrent_rate));
+        }
+    }
+
+    /**
+     * Writer adding a purchase.
+     */
+    private interface Writer {
+        void add(String title, String purchaser, List<String> recipients, Money amount, TimeStamp date);
+    }
+
+    /**
+     * Adds purchases from several threads.
+     *
+     * @return The number of purchases per second.
+     */
+    private static double ingest(int writers, int rows, Writer writer) throws InterruptedException {
+        List<String> names = createGroup().getMemberNames();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < writers; t++) {
+            int seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < rows / writers; i++) {
+                    String purchaser = names.get(random.nextInt(number_of_members));
+                    writer.add("purchase", purchaser, List.of(purchaser, names.get(random.nextInt(number_of_members))),
+                            Money.of(12.34, Currency.Euro), new TimeStamp("23.06.2021"));
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return rows / ((System.nanoTime() - start) / 1e9);
+    }
+
+    @Test
+    void benchmarkExchange() {
+        Group group = createGroup();
+        LinkedHashMap<Currency, Double> rates = new LinkedHashMap<Currency, Double>();
+        rates.put(Currency.USD, 1.19);
+
+        int n = 10000000;
+        Currency[] currencies = Currency.values();
+        for (int run = 0; run < 3; run++) {
+            // Test: multiplier table lookup
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += group.exchangeUnits(i, currencies[i & 1]);
+            }
+            double table = (System.nanoTime() - start) / (double) n;
+
+            // Test: reference map lookup with division
+            start = System.nanoTime();
+            long sum_2 = 0;
+            for (int i = 0; i < n; i++) {
+                Currency currency = currencies[i & 1];
+                if (currency.equals(group.getCurrency())) {
+                    sum_2 += i;
+                } else {
+                    if (!rates.containsKey(currency)) {
+                        throw new RuntimeException("No valid exchange rate found!");
+                    }
+                    sum_2 += (long) Math.rint(i * 100.0 / (100 * rates.get(currency)));
+                }
+            }
+            double map = (System.nanoTime() - start) / (double) n;
+
+            assertTrue(Math.abs(sum - sum_2) <= n);
+            System.out.println(String.format("Exchange: %.2f ns/op (table), %.2f ns/op (map)", table, map));
+        }
+    }
+
+    /**
+     * Loads a group like the former constructor via a Gson Map tree.
+     *
+     * @return A Group object.
+     */
+    private static Group loadTree(String path) throws IOException {
+        Gson gson = new Gson();
+        JsonReader reader = new JsonReader(new FileReader(path));
+        Map<?, ?> gson_root = gson.fromJson(reader, Map.class);
+        reader.close();
+
+        Group group = new Group((String) gson_root.get("name"), (String) gson_root.get("description"),
+                Currency.valueOf((String) gson_root.get("currency")));
+
+        Map<?, ?> gson_exchange_rates = (Map<?, ?>) gson_root.get("exchange_rates");
+        for (Map.Entry<?, ?> gson_rate : gson_exchange_rates.entrySet()) {
+            group.setExchangeRate(Currency.valueOf((String) gson_rate.getKey()), (Double) gson_rate.getValue());
+        }
+
+        for (Object gson_member_it : (List<?>) gson_root.get("members")) {
+            Map<?, ?> gson_member = (Map<?, ?>) gson_member_it;
+            group.addMember((String) gson_member.get("name")).setTime((String) gson_member.get("stamp"));
+        }
+
+        for (Object gson_purchase_it : (List<?>) gson_root.get("purchases")) {
+            Map<?, ?> gson_purchase = (Map<?, ?>) gson_purchase_it;
+            Purchase purchase = group.addPurchase((String) gson_purchase.get("title"),
+                    (String) gson_purchase.get("purchaser"),
+                    Utils.convertAll((List<?>) gson_purchase.get("recipients"), a -> ((Object) a).toString()),
+                    (Double) gson_purchase.get("amount"),
+                    Currency.valueOf((String) gson_purchase.get("currency")),
+                    new TimeStamp((String) gson_purchase.get("date")));
+            purchase.setTime((String) gson_purchase.get("stamp"));
+        }
+
+        return group;
+    }
+
+    @Test
+    void benchmarkAggregates() {
+        int rows = 200000;
+        int reads = 1000;
+
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        long start_second = new TimeStamp("01.01.2020").getEpochSecond();
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            group.addPurchase("purchase", names.get(i % number_of_members),
+                    List.of(names.get(random.nextInt(number_of_members)), names.get(random.nextInt(number_of_members))),
+                    Money.of(12.34, i % 3 == 0 ? Currency.USD : Currency.Euro),
+                    TimeStamp.ofEpochSecond(start_second + random.nextInt(730) * 86400L));
+        }
+        double add_us = (System.nanoTime() - start) / 1e3 / rows;
+
+        for (int run = 0; run < 3; run++) {
+            // Test: full recompute by the consistency checker
+            start = System.nanoTime();
+            group.checkAggregates();
+            double recompute_ms = (System.nanoTime() - start) / 1e6;
+
+            // Test: dashboard reads of the maintained aggregates
+            start = System.nanoTime();
+            long check = 0;
+            for (int i = 0; i < reads; i++) {
+                check += group.getMonthlyTurnovers().size() + group.getCurrencyTotals().size()
+                        + group.getMember(i % number_of_members).getSpending().getUnits();
+            }
+            double read_us = (System.nanoTime() - start) / 1e3 / reads;
+
+            System.out.println(String.format("Aggregates: add %.2f us, recompute %.1f ms, read %.1f us (%d rows, check %d)",
+                    add_us, recompute_ms, read_us, rows, check));
+            assertTrue(read_us * 1e-3 < recompute_ms);
+        }
+    }
+
+    @Test
+    void benchmarkBalancesAsOf() {
+        int rows = 200000;
+        int queries = 1000;
+
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        long start_second = new TimeStamp("01.01.2020").getEpochSecond();
+        Random random = new Random(1);
+        for (int i = 0; i < rows; i++) {
+            group.addPurchase("purchase", names.get(i % number_of_members),
+                    List.of(names.get(random.nextInt(number_of_members)), names.get(random.nextInt(number_of_members))),
+                    Money.of(12.34, i % 3 == 0 ? Currency.USD : Currency.Euro),
+                    TimeStamp.ofEpochSecond(start_second + random.nextInt(730) * 86400L));
+        }
+
+        for (int run = 0; run < 3; run++) {
+            // Test: scan of the whole history per query
+            long start = System.nanoTime();
+            long check = 0;
+            for (int q = 0; q < queries / 100; q++) {
+                long until = start_second + (q * 73 % 730 + 1) * 86400L;
+                double[] exact = new double[number_of_members];
+                for (Purchase purchase : group.getPurchases()) {
+                    Map<String, Object> tmp = purchase.toDict();
+                    if (new TimeStamp((String) tmp.get("date")).getEpochSecond() < until) {
+                        exact[group.getMemberByName((String) tmp.get("purchaser")).getId()] += purchase.getAmount().toDouble();
+                    }
+                }
+                check += Math.round(exact[0]);
+            }
+            double scan_us = (System.nanoTime() - start) / 1e3 / (queries / 100);
+
+            // Test: index build and queries
+            group.addMember(String.format("member_%d", number_of_members + run));
+            start = System.nanoTime();
+            group.getBalancesAsOf(TimeStamp.ofEpochSecond(start_second));
+            double build_ms = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                check += group.getBalancesAsOf(TimeStamp.ofEpochSecond(start_second + (q * 73 % 730) * 86400L))
+                        .get(names.get(0)).getUnits();
+            }
+            double query_us = (System.nanoTime() - start) / 1e3 / queries;
+
+            // Test: a query after each added purchase keeps the index
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                group.addPurchase("purchase", names.get(q % number_of_members), List.of(names.get(0)),
+                        Money.of(1.0, Currency.Euro), TimeStamp.ofEpochSecond(start_second + random.nextInt(730) * 86400L));
+                check += group.getBalancesAsOf(TimeStamp.ofEpochSecond(start_second + (q * 73 % 730) * 86400L))
+                        .get(names.get(0)).getUnits();
+            }
+            double write_us = (System.nanoTime() - start) / 1e3 / queries;
+
+            System.out.println(String.format("Balances as of: scan %.0f us, index build %.1f ms, query %.1f us, "
+                    + "add and query %.1f us (%d rows, check %d)", scan_us, build_ms, query_us, write_us, rows, check));
+            assertTrue(query_us < scan_us && write_us * 1e-3 < build_ms);
+        }
+    }
+
+    @Test
+    void benchmarkSearchPurchases() {
+        int rows = 200000;
+        int queries = 200;
+
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        Random random = new Random(1);
+        String[] words = new String[2000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = String.format("%s%d", List.of("hotel", "fuel", "dinner", "taxi", "museum").get(i % 5), i);
+        }
+        List<String> titles = new ArrayList<String>(rows);
+        for (int i = 0; i < rows; i++) {
+            String title = String.format("%s %s %s", words[random.nextInt(words.length)],
+                    words[random.nextInt(words.length)], words[random.nextInt(words.length)]);
+            titles.add(String.format(" %s ", title));
+            group.addPurchase(title, names.get(i % number_of_members), List.of(names.get(random.nextInt(number_of_members))),
+                    Money.of(12.34, Currency.Euro), new TimeStamp("23.06.2021"));
+        }
+
+        for (int run = 0; run < 3; run++) {
+            // Test: brute force scan with String.contains on space separated words
+            long start = System.nanoTime();
+            long scan_hits = 0;
+            for (int q = 0; q < queries; q++) {
+                String term_1 = String.format(" %s ", words[q * 7 % words.length]);
+                String term_2 = String.format(" %s", words[q * 13 % words.length].substring(0, 3));
+                for (String title : titles) {
+                    String tmp = title.toLowerCase();
+                    if (tmp.contains(term_1) && tmp.contains(term_2)) {
+                        scan_hits++;
+                    }
+                }
+            }
+            double scan_us = (System.nanoTime() - start) / 1e3 / queries;
+
+            // Test: inverted index with an exact and a prefix term, built by the first query
+            start = System.nanoTime();
+            assertTrue(group.searchPurchases("fuel*", 0, -1).size() > 0);
+            double first_ms = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            long index_hits = 0;
+            for (int q = 0; q < queries; q++) {
+                index_hits += group.searchPurchases(String.format("%s %s*", words[q * 7 % words.length],
+                        words[q * 13 % words.length].substring(0, 3))).size();
+            }
+            double index_us = (System.nanoTime() - start) / 1e3 / queries;
+
+            System.out.println(String.format("Search: scan %.0f us, first query %.1f ms, query %.1f us (%d rows, hits %d/%d)",
+                    scan_us, first_ms, index_us, rows, scan_hits, index_hits));
+            assertTrue(index_us < scan_us && index_hits == scan_hits);
+        }
+    }
+
+    @Test
+    void benchmarkStatement() {
+        int rows = 200000;
+        int pages = 1000;
+
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        long start_second = new TimeStamp("01.01.2020").getEpochSecond();
+        Random random = new Random(1);
+        for (int i = 0; i < rows; i++) {
+            group.addPurchase("purchase", names.get(i % number_of_members),
+                    List.of(names.get(random.nextInt(number_of_members)), names.get(random.nextInt(number_of_members))),
+                    Money.of(12.34, Currency.Euro), TimeStamp.ofEpochSecond(start_second + random.nextInt(730) * 86400L));
+        }
+        Member member = group.getMember(0);
+
+        for (int run = 0; run < 3; run++) {
+            // Test: format all participations
+            long start = System.nanoTime();
+            long check = 0;
+            for (Purchase purchase : group.getPurchases()) {
+                if (member.hasParticipation(purchase)) {
+                    check += purchase.toString().length();
+                }
+            }
+            double format_ms = (System.nanoTime() - start) / 1e6;
+
+            // Test: first page including the index build and random pages
+            group.addMember(String.format("member_%d", number_of_members + run));
+            start = System.nanoTime();
+            int size = member.numberOfParticipations();
+            check += member.getStatement(0, 20).getRows().size();
+            double first_ms = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (int i = 0; i < pages; i++) {
+                for (Statement.Row row : member.getStatement(random.nextInt(size - 20), 20).getRows()) {
+                    check += row.getTitle().length();
+                }
+            }
+            double page_us = (System.nanoTime() - start) / 1e3 / pages;
+
+            // Test: a page after each added purchase of the member keeps the index
+            start = System.nanoTime();
+            for (int i = 0; i < pages; i++) {
+                group.addPurchase("purchase", member.getName(), List.of(names.get(random.nextInt(number_of_members))),
+                        Money.of(1.0, Currency.Euro), TimeStamp.ofEpochSecond(start_second + random.nextInt(730) * 86400L));
+                for (Statement.Row row : member.getStatement(random.nextInt(size - 20), 20).getRows()) {
+                    check += row.getTitle().length();
+                }
+            }
+            double write_us = (System.nanoTime() - start) / 1e3 / pages;
+
+            System.out.println(String.format("Statement: format all %.1f ms, first page %.1f ms, page %.1f us, "
+                    + "add and page %.1f us (%d rows, check %d)", format_ms, first_ms, page_us, write_us, size, check));
+            assertTrue(page_us * 1e-3 < format_ms && write_us * 1e-3 < first_ms);
+        }
+    }
+
+    @Test
+    void benchmarkTimeStamp() {
+        int count = 1000000;
+        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
+        DateTimeFormatter fmt_date = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+        String[] strings = new String[1000];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = String.format(i % 10 == 0 ? "%02d.%02d.2021 12:30:00" : "%02d.%02d.2021", i % 28 + 1, i % 12 + 1);
+        }
+
+        for (int run = 0; run < 3; run++) {
+            // Test: formatter with exception driven fallback to the date only pattern
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                String tmp = strings[i % strings.length];
+                LocalDateTime time;
+                try {
+                    time = LocalDateTime.parse(tmp, fmt);
+                } catch (DateTimeParseException e) {
+                    time = LocalDate.parse(tmp, fmt_date).atStartOfDay();
+                }
+                sum += time.getDayOfMonth();
+            }
+            double formatter_ns = (double) (System.nanoTime() - start) / count;
+
+            // Test: fixed layout parser
+            start = System.nanoTime();
+            long check = 0;
+            for (int i = 0; i < count; i++) {
+                check += TimeStamp.parse(strings[i % strings.length]).getDayOfMonth();
+            }
+            double parse_ns = (double) (System.nanoTime() - start) / count;
+            assertTrue(sum == check);
+
+            // Test: formatting with and without the cached string
+            TimeStamp[] stamps = new TimeStamp[strings.length];
+            for (int i = 0; i < stamps.length; i++) {
+                stamps[i] = new TimeStamp(strings[i]);
+            }
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                LocalDateTime time = stamps[i % stamps.length].getTime();
+                sum += (time.equals(time.toLocalDate().atStartOfDay()) ? time.format(fmt_date) : time.format(fmt)).length();
+            }
+            double format_ns = (double) (System.nanoTime() - start) / count;
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                check += stamps[i % stamps.length].toString().length();
+            }
+            double cached_ns = (double) (System.nanoTime() - start) / count;
+
+            System.out.println(String.format("TimeStamp parse: formatter %.0f ns, fixed layout %.0f ns; format: formatter %.0f ns, cached %.0f ns",
+                    formatter_ns, parse_ns, format_ns, cached_ns));
+            assertTrue(parse_ns < formatter_ns);
+        }
+    }
+
+    @Test
+    void benchmarkGroupReader() throws IOException {
+        int rows = 200000;
+        String path = ".gradle/benchmark_reader.json";
+
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        for (int i = 0; i < rows; i++) {
+            group.addPurchase(String.format("purchase_%d", i), names.get(i % number_of_members),
+                    List.of(names.get((i + 1) % number_of_members), names.get((i + 2) % number_of_members)),
+                    Money.of(i % 1000 / 10.0, i % 2 == 0 ? Currency.Euro : Currency.USD),
+                    new TimeStamp("23.06.2021"));
+        }
+        group.save(path);
+        String binary_path = ".gradle/benchmark_reader.jsplit";
+        group.save(binary_path);
+        double turnover = group.getTurnover();
+        group = null;
+
+        for (int run = 0; run < 3; run++) {
+            // Test: Gson Map tree
+            usedMemory();
+            long start = System.nanoTime();
+            Group tree = loadTree(path);
+            double tree_ms = (System.nanoTime() - start) / 1e6;
+            assertTrue(tree.getTurnover() == turnover);
+            tree = null;
+
+            // Test: token streaming
+            usedMemory();
+            start = System.nanoTime();
+            Group streamed = new Group(path);
+            double stream_ms = (System.nanoTime() - start) / 1e6;
+            assertTrue(streamed.getTurnover() == turnover);
+            streamed = null;
+
+            // Test: memory mapped binary, summary only
+            usedMemory();
+            start = System.nanoTime();
+            Group binary = new Group(binary_path);
+            binary.getPendingBalances();
+            double lazy_ms = (System.nanoTime() - start) / 1e6;
+            assertTrue(binary.getTurnover() == turnover);
+
+            // Test: memory mapped binary, a single page
+            long page_start = System.nanoTime();
+            binary.getPurchase(rows / 2);
+            double page_ms = (System.nanoTime() - page_start) / 1e6;
+            assertTrue(!binary.isLoaded());
+
+            // Test: memory mapped binary, with history
+            binary.getPurchases();
+            double binary_ms = (System.nanoTime() - start) / 1e6;
+            assertTrue(binary.getTurnover() == turnover);
+            binary = null;
+
+            System.out.println(String.format("Load %d purchases: %.1f ms (binary summary), %.2f ms (binary page), "
+                    + "%.1f ms (binary), %.1f ms (stream), %.1f ms (tree)", rows, lazy_ms, page_ms, binary_ms,
+                    stream_ms, tree_ms));
+        }
+        System.out.println(String.format("File size: %d bytes (binary), %d bytes (Json)",
+                Files.size(Path.of(binary_path)), Files.size(Path.of(path))));
+    }
+
+    @Test
+    void benchmarkGroupRepository() {
+        String path = ".gradle/benchmark_repository.json";
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        for (int i = 0; i < 10000; i++) {
+            group.addPurchase("purchase", names.get(i % number_of_members), List.of(names.get(1), names.get(2)),
+                    Money.of(12.34, Currency.Euro), new TimeStamp("23.06.2021"));
+        }
+        group.save(path);
+
+        int n = 100;
+        GroupRepository repository = new GroupRepository(".gradle", 1000000);
+        for (int run = 0; run < 3; run++) {
+            // Test: parsing for every request
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                new Group(path).getPendingBalances();
+            }
+            double parse_ms = (System.nanoTime() - start) / 1e6 / n;
+
+            // Test: cached group
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                repository.get("benchmark_repository").getPendingBalances();
+            }
+            double cache_ms = (System.nanoTime() - start) / 1e6 / n;
+
+            System.out.println(String.format("Group request: %.3f ms (cached), %.3f ms (parsed)", cache_ms, parse_ms));
+            assertTrue(cache_ms < parse_ms);
+        }
+        System.out.println(repository.toString());
+    }
+
+    @Test
+    void benchmarkGroupLoader() throws IOException {
+        String directory = ".gradle/benchmark_loader";
+        Files.createDirectories(Path.of(directory));
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        for (int i = 0; i < 2000; i++) {
+            group.addPurchase("purchase", names.get(i % number_of_members), List.of(names.get(1), names.get(2)),
+                    Money.of(12.34, Currency.Euro), new TimeStamp("23.06.2021"));
+        }
+        for (int i = 0; i < 200; i++) {
+            group.save(String.format("%s/group_%03d.json", directory, i));
+        }
+        List<String> paths = GroupLoader.list(directory);
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= Math.max(processors, 4); threads *= 2) {
+            long start = System.nanoTime();
+            GroupLoader.Result<Double> result = new GroupLoader(threads).load(paths, a -> a.getTurnover());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            assertTrue(result.getValues().size() == paths.size());
+            System.out.println(String.format("Bulk load with %d thread(s): %.1f files/s", threads, paths.size() / seconds));
+        }
+    }
+
+    @Test
+    void benchmarkGroupJournal() {
+        int rows = 500000;
+        int appends = 100000;
+        String path = ".gradle/benchmark_journal.json";
+
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        List<String> recipients = List.of(names.get(1), names.get(2));
+        Money amount = Money.of(12.34, Currency.Euro);
+        TimeStamp date = new TimeStamp("23.06.2021");
+        for (int i = 0; i < rows; i++) {
+            group.addPurchase("purchase", names.get(i % number_of_members), recipients, amount, date);
+        }
+
+        // Test: full rewrite
+        long start = System.nanoTime();
+        group.save(path);
+        double save_ms = (System.nanoTime() - start) / 1e6;
+
+        // Test: journal append with group commit
+        GroupJournal journal = GroupJournal.create(path, group);
+        for (int run = 0; run < 3; run++) {
+            start = System.nanoTime();
+            for (int i = 0; i < appends; i++) {
+                group.addPurchase("purchase", names.get(i % number_of_members), recipients, amount, date);
+            }
+            journal.commit();
+            double append_us = (System.nanoTime() - start) / 1e3 / appends;
+
+            System.out.println(String.format("Journal append: %.2f us/purchase, full save: %.1f ms (%d purchases)",
+                    append_us, save_ms, rows));
+            assertTrue(append_us * 1e-3 < save_ms);
+        }
+        journal.close();
+    }
+
+    @Test
+    void benchmarkImportPurchases() {
+        int rows = 200000;
+
+        Group group = createGroup();
+        List<String> names = group.getMemberNames();
+        StringBuilder csv = new StringBuilder("title,purchaser,recipients,amount,currency,date\n");
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            String purchaser = names.get(i % number_of_members);
+            String recipient = names.get((i + 1) % number_of_members);
+            csv.append(String.format("purchase,%s,%s;%s,12.34,Euro,23.06.2021\n", purchaser, purchaser, recipient));
+            json.append(String.format("{\"title\": \"purchase\", \"purchaser\": \"%s\", \"recipients\": [\"%s\", \"%s\"], "
+                    + "\"amount\": 12.34, \"currency\": \"Euro\", \"date\": \"23.06.2021\"}\n", purchaser, purchaser, recipient));
+        }
+
+        double best_loop_rate = 0.0;
+        double best_csv_rate = 0.0;
+        for (int run = 0; run < 3; run++) {
+            // Test: the same rows parsed and added one by one through the public API
+            Group reference = createGroup();
+            long start = System.nanoTime();
+            String[] lines = csv.toString().split("\n");
+            for (int i = 1; i < lines.length; i++) {
+                String[] fields = lines[i].split(",");
+                reference.addPurchase(fields[0], fields[1], List.of(fields[2].split(";")),
+                        Money.of(Double.parseDouble(fields[3]), Currency.valueOf(fields[4])), new TimeStamp(fields[5]));
+            }
+            double loop_rate = rows / ((System.nanoTime() - start) / 1e9);
+
+            // Test: batched import
+            Group imported = createGroup();
+            start = System.nanoTime();
+            assertTrue(imported.importPurchases(new StringReader(csv.toString())).getImported() == rows);
+            double csv_rate = rows / ((System.nanoTime() - start) / 1e9);
+
+            imported = createGroup();
+            start = System.nanoTime();
+            assertTrue(imported.importPurchases(new StringReader(json.toString())).getImported() == rows);
+            double json_rate = rows / ((System.nanoTime() - start) / 1e9);
+
+            assertTrue(imported.getMember(0).getBalance().equals(reference.getMember(0).getBalance()));
+            System.out.println(String.format("Import: addPurchase %.0f rows/s, CSV %.0f rows/s, Json lines %.0f rows/s",
+                    loop_rate, csv_rate, json_rate));
+            best_loop_rate = Math.max(best_loop_rate, loop_rate);
+            best_csv_rate = Math.max(best_csv_rate, csv_rate);
+        }
+        // single runs vary too much on a shared machine, the best runs are compared
+        assertTrue(best_csv_rate > best_loop_rate);
+    }
+}
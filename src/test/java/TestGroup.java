@@ -23,18 +23,41 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
 
+import javasplit.Balance;
+import javasplit.ConcurrentGroup;
 import javasplit.Group;
+import javasplit.GroupJournal;
+import javasplit.GroupLoader;
+import javasplit.GroupRepository;
 import javasplit.Member;
+import javasplit.MinimumTransfersSettlementEngine;
 import javasplit.Purchase;
+import javasplit.PurchaseImporter;
+import javasplit.PurchaseTable;
+import javasplit.Statement;
 import javasplit.Transfer;
 import javasplit.utils.Currency;
+import javasplit.utils.Money;
 import javasplit.utils.TimeStamp;
 
 public class TestGroup {
@@ -68,6 +91,11 @@ public class TestGroup {
                 100.0, Currency.Euro, new TimeStamp("23.06.2021 07:54:21"));
         purchase.setTime("23.06.2021 07:54:22");
 
+        // Test: recipients by member and name
+        assertTrue(purchase.isRecipient(member_2) && !purchase.isRecipient(member_1));
+        assertTrue(purchase.isRecipient("member_2") && !purchase.isRecipient("member_3"));
+        assertTrue(purchase.isPurchaser(member_1) && purchase.numberOfRecipients() == 1);
+
         purchase = group.addPurchase("purchase_3", "member_1",
                 List.of("member_1", "member_2"),
                 200.0, Currency.USD, new TimeStamp("23.06.2021 07:57:19"));
@@ -78,6 +106,21 @@ public class TestGroup {
                 200.0, Currency.USD, new TimeStamp("23.06.2021 07:57:19"));
         transfer.setTime("23.06.2021 07:57:19");
 
+        // Test: balances (168.07 split into 84.04 and 84.03)
+        assertTrue(member_1.getBalance().equals(Money.of(234.03, Currency.Euro)));
+        assertTrue(member_1.getBalance().add(member_2.getBalance()).isZero());
+
+        // Test: balances after an exchange rate change
+        group.setExchangeRate(Currency.USD, 1.0);
+        assertTrue(member_1.getBalance().equals(Money.of(250.0, Currency.Euro)));
+        group.setExchangeRate(Currency.USD, 1.19);
+        assertTrue(member_1.getBalance().equals(Money.of(234.03, Currency.Euro)));
+
+        // Test: pending balances
+        List<Balance> balances = group.getPendingBalances();
+        assertTrue(balances.size() == 1);
+        assertTrue(balances.get(0).getAmount().equals(member_1.getBalance()));
+
         // Test: toDict()
         LinkedHashMap<String, Object> tmp = group.toDict();
         assertTrue(tmp.containsKey("stamp"));
@@ -107,4 +150,1250 @@ public class TestGroup {
             throw new RuntimeException();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSettlement() {
+        // Test: settle a larger group
+        Group group = new Group("Settlement", "", Currency.Euro);
+        Random random = new Random(42);
+
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            names.add(String.format("member_%d", i));
+            group.addMember(names.get(i));
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            String purchaser = names.get(random.nextInt(names.size()));
+            List<String> recipients = names.subList(random.nextInt(names.size() - 5), names.size());
+            group.addPurchase(String.format("purchase_%d", i), purchaser, recipients,
+                    (double) random.nextInt(10000), Currency.Euro, new TimeStamp());
+        }
+
+        // Test: every balance settles at least one member
+        List<Balance> balances = group.getPendingBalances();
+        assertTrue(balances.size() < names.size());
+
+        // Test: applying the balances settles the group
+        for (Balance balance : balances) {
+            assertTrue(balance.getAmount().signum() > 0);
+            balance.toTransfer();
+        }
+
+        for (String name : names) {
+            assertTrue(group.getMemberByName(name).getBalance().isZero());
+        }
+    }
+
+    @Test
+    void testMinimumTransfers() {
+        Random random = new Random(7);
+        for (int run = 0; run < 20; run++) {
+            // Test: group with integer debts between a few members
+            Group group = new Group("Settlement", "", Currency.Euro);
+            List<String> names = new ArrayList<String>();
+            for (int i = 0; i < 10; i++) {
+                names.add(String.format("member_%d", i));
+                group.addMember(names.get(i));
+            }
+
+            for (int i = 0; i < 12; i++) {
+                group.addPurchase(String.format("purchase_%d", i),
+                        names.get(random.nextInt(names.size())),
+                        List.of(names.get(random.nextInt(names.size()))),
+                        (double) (1 + random.nextInt(20)), Currency.Euro, new TimeStamp());
+            }
+
+            int greedy = group.getPendingBalances().size();
+
+            // Test: dynamic program never needs more transfers than greedy
+            MinimumTransfersSettlementEngine engine = new MinimumTransfersSettlementEngine(10000);
+            group.setSettlementEngine(engine);
+            List<Balance> exact = group.getPendingBalances();
+            assertTrue(exact.size() <= greedy);
+
+            // Test: branch and bound finds the same number of transfers
+            engine.setDynamicProgramLimit(0);
+            assertTrue(group.getPendingBalances().size() == exact.size());
+
+            // Test: applying the balances settles the group
+            for (Balance balance : exact) {
+                balance.toTransfer();
+            }
+
+            for (String name : names) {
+                assertTrue(group.getMemberByName(name).getBalance().isZero());
+            }
+        }
+    }
+
+    @Test
+    void testPurchaseTable() {
+        Group group = new Group("Table", "", Currency.Euro);
+        group.setExchangeRate(Currency.USD, 1.19);
+        Member member_1 = group.addMember("member_1");
+        Member member_2 = group.addMember("member_2");
+        group.addMember("member_3");
+
+        group.addPurchase("purchase_1", "member_1", List.of("member_1", "member_2", "member_3"),
+                100.0, Currency.Euro, new TimeStamp("23.06.2021"));
+        group.addPurchase("purchase_2", "member_2", List.of("member_3"),
+                200.0, Currency.USD, new TimeStamp("24.06.2021"));
+        group.addTransfer("transfer_1", "member_3", "member_1",
+                10.0, Currency.Euro, new TimeStamp("25.06.2021"));
+
+        // Test: the table aggregates match the object model
+        PurchaseTable table = PurchaseTable.of(group);
+        assertTrue(table.size() == 3);
+        assertTrue(table.getTurnover() == group.getTurnover());
+
+        long[] balances = table.getBalances();
+        for (Member member : group.getMembers()) {
+            assertTrue(balances[member.getId()] == member.getBalance().getUnits());
+        }
+        assertTrue(table.getPendingBalances().size() == group.getPendingBalances().size());
+
+        // Test: rows are read through one view moved between rows
+        PurchaseTable.View view = table.view(1);
+        assertTrue(view.getTitle().equals("purchase_2") && view.getPurchaser() == member_2);
+        assertTrue(view.getCurrency() == Currency.USD && !view.isTransfer() && view.getPurchaserId() == 1);
+        assertTrue(view.getEpochSecond() == new TimeStamp("24.06.2021").getEpochSecond());
+        assertTrue(view.getAmountUnits() == 20000
+                && view.getExchangedUnits() == group.exchange(Money.of(200.0, Currency.USD)).getUnits());
+        view.moveTo(2);
+        assertTrue(view.isTransfer() && view.isRecipient(member_1) && view.numberOfRecipients() == 1);
+
+        // Test: rows can be appended without purchase objects
+        table.addPurchase("purchase_3", member_1.getId(), new int[] { 1, 0, 1 },
+                Money.of(1.0, Currency.Euro), new TimeStamp("26.06.2021"));
+        view.moveTo(3);
+        assertTrue(view.numberOfRecipients() == 2 && view.isRecipient(0) && !view.isRecipient(2));
+
+        // Test: a new rate point moves the rows dated after it
+        group.setExchangeRate(Currency.USD, 2.0, new TimeStamp("24.06.2021"));
+        PurchaseTable expected = PurchaseTable.of(group);
+        expected.addPurchase("purchase_3", member_1.getId(), new int[] { 1, 0, 1 },
+                Money.of(1.0, Currency.Euro), new TimeStamp("26.06.2021"));
+        assertTrue(Arrays.equals(table.getBalances(), expected.getBalances()));
+        assertTrue(!Arrays.equals(table.getBalances(), balances) && table.getTurnover() == expected.getTurnover());
+        view.moveTo(1);
+        assertTrue(view.getExchangedUnits() == 10000);
+    }
+
+    @Test
+    void testRemoveAndUpdate() {
+        Group group = new Group("Edit", "", Currency.Euro);
+        group.setExchangeRate(Currency.USD, 1.19);
+        Member member_1 = group.addMember("member_1");
+        Member member_2 = group.addMember("member_2");
+        Member member_3 = group.addMember("member_3");
+
+        Purchase purchase = group.addPurchase("purchase_1", "member_1",
+                List.of("member_1", "member_2"), 100.0, Currency.Euro, new TimeStamp("23.06.2021"));
+        Transfer transfer = group.addTransfer("transfer_1", "member_2", "member_1",
+                50.0, Currency.Euro, new TimeStamp("24.06.2021"));
+        assertTrue(member_1.getBalance().isZero() && member_2.getBalance().isZero());
+
+        // Test: update moves the participations and balances
+        group.updatePurchase(purchase, "purchase_2", "member_3", List.of("member_1"),
+                Money.of(200.0, Currency.USD), new TimeStamp("25.06.2021"));
+        assertTrue(member_3.getBalance().equals(Money.of(168.07, Currency.Euro)));
+        assertTrue(member_3.numberOfParticipations() == 1 && member_2.numberOfParticipations() == 1);
+        assertTrue(purchase.toString().startsWith("purchase_2"));
+
+        // Test: failed update keeps the purchase unchanged
+        try {
+            group.updatePurchase(purchase, "purchase_3", "member_4", List.of("member_1"),
+                    Money.of(1.0, Currency.Euro), new TimeStamp("26.06.2021"));
+            throw new AssertionError("Exception not captured!");
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getClass().getName()));
+        }
+        assertTrue(member_3.getBalance().equals(Money.of(168.07, Currency.Euro)));
+
+        // Test: update without recipients is rejected before unlinking
+        try {
+            group.updatePurchase(purchase, "purchase_3", "member_3", List.of(),
+                    Money.of(1.0, Currency.Euro), new TimeStamp("26.06.2021"));
+            throw new AssertionError("Exception not captured!");
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+        }
+        assertTrue(member_3.getBalance().equals(Money.of(168.07, Currency.Euro)));
+        assertTrue(member_3.numberOfParticipations() == 1 && purchase.toString().startsWith("purchase_2"));
+        group.checkAggregates();
+
+        // Test: removal by position keeps the order of the others
+        Purchase purchase_a = group.addPurchase("purchase_a", "member_1", List.of("member_2"),
+                10.0, Currency.Euro, new TimeStamp("27.06.2021"));
+        Purchase purchase_b = group.addPurchase("purchase_b", "member_2", List.of("member_1"),
+                10.0, Currency.Euro, new TimeStamp("28.06.2021"));
+        group.removePurchase(purchase_a);
+        group.updatePurchase(purchase_b, "purchase_b", "member_2", List.of("member_3"),
+                Money.of(10.0, Currency.Euro), new TimeStamp("28.06.2021"));
+        assertTrue(group.getPurchases().equals(List.of(purchase, purchase_b)));
+        group.removePurchase(purchase_b);
+        group.checkAggregates();
+
+        // Test: removal unlinks the participations and balances
+        group.removePurchase(purchase);
+        group.removeTransfer(transfer);
+        for (Member member : group.getMembers()) {
+            assertTrue(member.getBalance().isZero() && member.numberOfParticipations() == 0);
+        }
+        assertTrue(group.getPurchases().isEmpty() && group.getTransfers().isEmpty());
+
+        // Test: removed purchases can not be removed again
+        try {
+            group.removePurchase(purchase);
+            throw new AssertionError("Exception not captured!");
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getClass().getName()));
+        }
+    }
+
+    @Test
+    void testExchange() {
+        Group group = new Group("Exchange", "", Currency.Euro);
+        Member member_1 = group.addMember("member_1");
+        group.addMember("member_2");
+
+        // Test: missing exchange rates fail when adding a purchase
+        try {
+            group.addPurchase("purchase_1", "member_1", List.of("member_2"),
+                    100.0, Currency.USD, new TimeStamp("23.06.2021"));
+            throw new AssertionError("Exception not captured!");
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getClass().getName()));
+        }
+        assertTrue(group.getPurchases().isEmpty() && member_1.getBalance().isZero());
+        assertTrue(!group.hasExchangeRate(Currency.USD) && group.hasExchangeRate(Currency.Euro));
+
+        // Test: conversion with the inverted rate
+        group.setExchangeRate(Currency.USD, 1.25);
+        assertTrue(group.exchangeUnits(10000, Currency.USD) == 8000);
+        assertTrue(group.exchange(Money.of(1.0, Currency.Euro)).getUnits() == 100);
+
+        // Test: ties round half to even like Money.of
+        group.setExchangeRate(Currency.USD, 2.0);
+        assertTrue(group.exchangeUnits(25, Currency.USD) == 12 && group.exchangeUnits(35, Currency.USD) == 18);
+        assertTrue(group.exchangeUnits(-25, Currency.USD) == -12);
+        assertTrue(group.exchange(Money.of(0.25, Currency.USD)).equals(Money.of(0.125, Currency.Euro)));
+
+        // Test: raise on invalid exchange rates
+        try {
+            group.setExchangeRate(Currency.USD, 0.0);
+            throw new AssertionError("Exception not captured!");
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getClass().getName()));
+        }
+    }
+
+    @Test
+    void testDatedExchangeRates() {
+        Group group = new Group("Dated", "", Currency.Euro);
+        group.setExchangeRate(Currency.USD, 1.0);
+        Member member_1 = group.addMember("member_1");
+        group.addMember("member_2");
+
+        Purchase purchase_1 = group.addPurchase("purchase_1", "member_1", List.of("member_2"),
+                100.0, Currency.USD, new TimeStamp("01.03.2021"));
+        Purchase purchase_2 = group.addPurchase("purchase_2", "member_1", List.of("member_2"),
+                100.0, Currency.USD, new TimeStamp("01.05.2021"));
+
+        // Test: a new rate point only revalues the following purchases
+        group.setExchangeRate(Currency.USD, 2.0, new TimeStamp("01.04.2021"));
+        assertTrue(purchase_1.getAmount().equals(Money.of(100.0, Currency.Euro)));
+        assertTrue(purchase_2.getAmount().equals(Money.of(50.0, Currency.Euro)));
+        assertTrue(member_1.getBalance().equals(Money.of(150.0, Currency.Euro)));
+
+        // Test: an earlier rate point ends at the next one
+        group.setExchangeRate(Currency.USD, 4.0, new TimeStamp("01.02.2021"));
+        assertTrue(purchase_1.getAmount().equals(Money.of(25.0, Currency.Euro)));
+        assertTrue(purchase_2.getAmount().equals(Money.of(50.0, Currency.Euro)));
+        assertTrue(member_1.getBalance().equals(Money.of(75.0, Currency.Euro)));
+
+        // Test: changing an existing rate point re-prices from the subtotals
+        group.setExchangeRate(Currency.USD, 1.0, new TimeStamp("01.04.2021"));
+        assertTrue(purchase_2.getAmount().equals(Money.of(100.0, Currency.Euro)));
+        assertTrue(member_1.getBalance().equals(Money.of(125.0, Currency.Euro)));
+        assertTrue(group.getTurnover() == 125.0);
+        group.setExchangeRate(Currency.USD, 2.0, new TimeStamp("01.04.2021"));
+        group.checkAggregates();
+
+        // Test: the latest rate applies to undated conversions
+        assertTrue(group.exchange(Money.of(100.0, Currency.USD)).equals(Money.of(50.0, Currency.Euro)));
+
+        // Test: save and load keep the rate history
+        String path = ".gradle/test_dated.json";
+        group.save(path);
+        Group loaded = new Group(path);
+        assertTrue(loaded.getMemberByName("member_1").getBalance().equals(member_1.getBalance()));
+        assertTrue(loaded.toDict().equals(group.toDict()));
+        loaded.print();
+    }
+
+    @Test
+    void testAggregates() {
+        Random random = new Random(3);
+        Group group = new Group("Aggregates", "", Currency.Euro);
+        group.setExchangeRate(Currency.USD, 0.5);
+        for (int i = 0; i < 4; i++) {
+            group.addMember(String.format("member_%d", i));
+        }
+
+        // Test: aggregates of a small example
+        List<String> names = group.getMemberNames();
+        group.addPurchase("purchase_1", "member_0", List.of("member_1", "member_2"), Money.of(10.0, Currency.Euro),
+                new TimeStamp("15.01.2021"));
+        group.addPurchase("purchase_2", "member_0", List.of("member_1"), Money.of(20.0, Currency.USD),
+                new TimeStamp("31.01.2021 23:00:00"));
+        group.addPurchase("purchase_3", "member_1", List.of("member_0"), Money.of(4.0, Currency.Euro),
+                new TimeStamp("01.02.2021"));
+        group.addTransfer("transfer_1", "member_1", "member_0", Money.of(3.0, Currency.Euro),
+                new TimeStamp("02.02.2021"));
+        assertTrue(group.getTurnover() == 54.0);
+        assertTrue(group.getCurrencyTotals().equals(Map.of(Currency.Euro, Money.of(14.0, Currency.Euro),
+                Currency.USD, Money.of(20.0, Currency.USD))));
+        assertTrue(group.getMemberByName("member_0").getSpending().equals(Money.of(50.0, Currency.Euro)));
+        assertTrue(group.getMemberByName("member_1").getSpending().equals(Money.of(4.0, Currency.Euro)));
+        assertTrue(group.getMonthlyTurnovers().equals(Map.of(YearMonth.of(2021, 1), Money.of(50.0, Currency.Euro),
+                YearMonth.of(2021, 2), Money.of(4.0, Currency.Euro))));
+        group.checkAggregates();
+
+        // Test: random additions, removals, updates and rate changes
+        for (int i = 0; i < 500; i++) {
+            TimeStamp date = TimeStamp.ofEpochSecond(new TimeStamp("01.01.2021").getEpochSecond() + random.nextInt(365) * 86400L);
+            Money amount = Money.of(random.nextInt(10000) / 100.0, random.nextBoolean() ? Currency.USD : Currency.Euro);
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                group.addPurchase("purchase", names.get(random.nextInt(4)),
+                        List.of(names.get(random.nextInt(4)), names.get(random.nextInt(4))), amount, date);
+            } else if (operation < 7) {
+                group.addTransfer("transfer", names.get(random.nextInt(4)), names.get(random.nextInt(4)), amount, date);
+            } else if (operation == 7 && !group.getPurchases().isEmpty()) {
+                group.removePurchase(group.getPurchases().get(random.nextInt(group.getPurchases().size())));
+            } else if (operation == 8 && !group.getPurchases().isEmpty()) {
+                group.updatePurchase(group.getPurchases().get(random.nextInt(group.getPurchases().size())), "updated",
+                        names.get(random.nextInt(4)), List.of(names.get(random.nextInt(4))), amount, date);
+            } else {
+                group.setExchangeRate(Currency.USD, 0.5 + random.nextInt(10) / 10.0,
+                        random.nextBoolean() ? date : new TimeStamp("01.07.2021"));
+            }
+
+            if (i % 25 == 0) {
+                group.getPendingBalances();
+                group.checkAggregates();
+            }
+        }
+        group.checkAggregates();
+
+        // Test: months and members sum up to the turnover up to rounding
+        double months = 0.0;
+        for (Money tmp : group.getMonthlyTurnovers().values()) {
+            months += tmp.toDouble();
+        }
+        double spendings = 0.0;
+        for (Member member : group.getMembers()) {
+            spendings += member.getSpending().toDouble();
+        }
+        assertTrue(Math.abs(months - group.getTurnover()) < 0.01 * group.getMonthlyTurnovers().size());
+        assertTrue(Math.abs(spendings - group.getTurnover()) < 0.01 * group.getNumberOfMembers());
+    }
+
+    @Test
+    void testDateIndex() {
+        Random random = new Random(7);
+        Group group = new Group("Dates", "", Currency.Euro);
+        group.setExchangeRate(Currency.USD, 0.8);
+        group.setExchangeRate(Currency.USD, 0.9, new TimeStamp("01.03.2021"));
+        for (int i = 0; i < 6; i++) {
+            group.addMember(String.format("member_%d", i));
+        }
+
+        List<String> names = group.getMemberNames();
+        List<Purchase> entries = new ArrayList<Purchase>();
+        for (int i = 0; i < 1500; i++) {
+            TimeStamp date = TimeStamp.ofEpochSecond(new TimeStamp("01.01.2021").getEpochSecond()
+                    + random.nextInt(120) * 86400L + (i % 3 == 0 ? random.nextInt(86400) : 0));
+            Money amount = Money.of(1 + random.nextInt(10000) / 100.0, i % 4 == 0 ? Currency.USD : Currency.Euro);
+            String purchaser = names.get(random.nextInt(names.size()));
+            if (i % 5 == 0) {
+                entries.add(group.addTransfer("transfer", purchaser, names.get(random.nextInt(names.size())), amount, date));
+            } else {
+                entries.add(group.addPurchase("purchase", purchaser,
+                        List.of(names.get(random.nextInt(names.size())), names.get(random.nextInt(names.size()))), amount, date));
+            }
+        }
+
+        // Test: balances as of a date against a group of the earlier entries
+        for (String cut : List.of("31.12.2020", "15.01.2021", "31.01.2021", "28.02.2021", "31.03.2021 12:00:00", "31.12.2021")) {
+            TimeStamp date = new TimeStamp(cut);
+            long until = date.getEpochSecond() + (date.isDateOnly() ? 86400 : 1);
+            Group expected = new Group("Dates", "", Currency.Euro);
+            expected.setExchangeRate(Currency.USD, 0.8);
+            expected.setExchangeRate(Currency.USD, 0.9, new TimeStamp("01.03.2021"));
+            for (String name : names) {
+                expected.addMember(name);
+            }
+            for (Purchase entry : entries) {
+                Map<String, Object> tmp = entry.toDict();
+                TimeStamp entry_date = new TimeStamp((String) tmp.get("date"));
+                if (entry_date.getEpochSecond() >= until) {
+                    continue;
+                }
+
+                Money amount = Money.of((Double) tmp.get("amount"), Currency.valueOf((String) tmp.get("currency")));
+                @SuppressWarnings("unchecked")
+                List<String> recipients = (List<String>) tmp.get("recipients");
+                if (entry instanceof Transfer) {
+                    expected.addTransfer("transfer", (String) tmp.get("purchaser"), recipients.get(0), amount, entry_date);
+                } else {
+                    expected.addPurchase("purchase", (String) tmp.get("purchaser"), recipients, amount, entry_date);
+                }
+            }
+
+            Map<String, Money> balances = group.getBalancesAsOf(date);
+            for (String name : names) {
+                assertTrue(balances.get(name).equals(expected.getMemberByName(name).getBalance()));
+            }
+            assertTrue(group.getPendingBalancesAsOf(date).size() == expected.getPendingBalances().size());
+        }
+
+        // Test: range iterators in date order
+        TimeStamp from = new TimeStamp("01.02.2021");
+        TimeStamp until = new TimeStamp("01.03.2021");
+        long count = 0;
+        long last = Long.MIN_VALUE;
+        for (Purchase purchase : group.getPurchasesBetween(from, until)) {
+            long second = new TimeStamp((String) purchase.toDict().get("date")).getEpochSecond();
+            assertTrue(!(purchase instanceof Transfer) && second >= last && second >= from.getEpochSecond()
+                    && second < until.getEpochSecond());
+            last = second;
+            count++;
+        }
+        for (Transfer transfer : group.getTransfersBetween(from, until)) {
+            assertTrue(transfer != null);
+            count++;
+        }
+        assertTrue(count == entries.stream().map(a -> new TimeStamp((String) a.toDict().get("date")).getEpochSecond())
+                .filter(a -> a >= from.getEpochSecond() && a < until.getEpochSecond()).count());
+
+        // Test: the index follows changes
+        TimeStamp end = new TimeStamp("31.12.2021");
+        group.removePurchase(group.getPurchases().get(0));
+        group.addMember("member_6");
+        group.addPurchase("purchase", "member_6", List.of("member_0"), Money.of(10.0, Currency.Euro),
+                new TimeStamp("01.02.2021"));
+        for (Member member : group.getMembers()) {
+            assertTrue(group.getBalancesAsOf(end).get(member.getName()).equals(member.getBalance()));
+        }
+
+        // Test: incremental changes across merges against a rebuilt index
+        names = group.getMemberNames();
+        String path = ".gradle/test_date_index.json";
+        for (int i = 0; i < 900; i++) {
+            List<Purchase> purchases = group.getPurchases();
+            TimeStamp date = TimeStamp.ofEpochSecond(new TimeStamp("01.01.2021").getEpochSecond()
+                    + random.nextInt(120) * 86400L);
+            String purchaser = names.get(random.nextInt(names.size()));
+            List<String> recipients = List.of(names.get(random.nextInt(names.size())), names.get(random.nextInt(names.size())));
+            Money amount = Money.of(1 + random.nextInt(10000) / 100.0, i % 4 == 0 ? Currency.USD : Currency.Euro);
+            switch (random.nextInt(3)) {
+                case 0:
+                    group.addPurchase("purchase", purchaser, recipients, amount, date);
+                    break;
+                case 1:
+                    group.removePurchase(purchases.get(random.nextInt(purchases.size())));
+                    break;
+                default:
+                    group.updatePurchase(purchases.get(random.nextInt(purchases.size())), "purchase", purchaser,
+                            recipients, amount, date);
+            }
+
+            if (i % 150 != 149) {
+                continue;
+            }
+
+            group.save(path);
+            Group rebuilt = new Group(path);
+            for (String cut : List.of("15.01.2021", "28.02.2021", "31.03.2021 12:00:00", "31.12.2021")) {
+                assertTrue(group.getBalancesAsOf(new TimeStamp(cut)).equals(rebuilt.getBalancesAsOf(new TimeStamp(cut))));
+            }
+
+            List<String> dates = new ArrayList<String>();
+            for (Purchase purchase : group.getPurchasesBetween(from, until)) {
+                dates.add((String) purchase.toDict().get("date"));
+            }
+            List<String> rebuilt_dates = new ArrayList<String>();
+            for (Purchase purchase : rebuilt.getPurchasesBetween(from, until)) {
+                rebuilt_dates.add((String) purchase.toDict().get("date"));
+            }
+            assertTrue(dates.equals(rebuilt_dates));
+
+            // statements agree at the end of each date, entries of the same date may be ordered differently
+            for (String name : List.of("member_0", "member_6")) {
+                List<Statement.Row> rows = new ArrayList<Statement.Row>();
+                List<Statement.Row> rebuilt_rows = new ArrayList<Statement.Row>();
+                for (int cursor = 0; cursor >= 0;) {
+                    Statement statement = group.getMemberByName(name).getStatement(cursor, 37);
+                    rows.addAll(statement.getRows());
+                    cursor = statement.getNextCursor();
+                }
+                for (int cursor = 0; cursor >= 0;) {
+                    Statement statement = rebuilt.getMemberByName(name).getStatement(cursor, 37);
+                    rebuilt_rows.addAll(statement.getRows());
+                    cursor = statement.getNextCursor();
+                }
+
+                assertTrue(rows.size() == rebuilt_rows.size() && rows.size() == group.getMemberByName(name).numberOfParticipations());
+                for (int j = 0; j < rows.size(); j++) {
+                    assertTrue(rows.get(j).getDate().equals(rebuilt_rows.get(j).getDate()));
+                    if (j + 1 == rows.size() || !rows.get(j + 1).getDate().equals(rows.get(j).getDate())) {
+                        assertTrue(rows.get(j).getBalance().equals(rebuilt_rows.get(j).getBalance()));
+                    }
+                }
+                assertTrue(rows.isEmpty() || rows.get(rows.size() - 1).getBalance().equals(group.getMemberByName(name).getBalance()));
+            }
+        }
+    }
+
+    @Test
+    void testStatement() {
+        Random random = new Random(11);
+        Group group = new Group("Statement", "", Currency.Euro);
+        for (int i = 0; i < 4; i++) {
+            group.addMember(String.format("member_%d", i));
+        }
+
+        List<String> names = group.getMemberNames();
+        for (int i = 0; i < 700; i++) {
+            TimeStamp date = TimeStamp.ofEpochSecond(new TimeStamp("01.01.2021").getEpochSecond() + random.nextInt(365) * 86400L);
+            Money amount = Money.of(1 + random.nextInt(10000) / 100.0, Currency.Euro);
+            if (i % 7 == 0) {
+                group.addTransfer("transfer", names.get(random.nextInt(4)), names.get(random.nextInt(4)), amount, date);
+            } else {
+                group.addPurchase(String.format("purchase_%d", i), names.get(random.nextInt(4)),
+                        List.of(names.get(random.nextInt(4)), names.get(random.nextInt(4)), names.get(random.nextInt(4))),
+                        amount, date);
+            }
+        }
+
+        // Test: pages in date order with running balances
+        Member member = group.getMemberByName("member_0");
+        List<Statement.Row> rows = new ArrayList<Statement.Row>();
+        int cursor = 0;
+        while (cursor >= 0) {
+            Statement statement = member.getStatement(cursor, 50);
+            assertTrue(statement.getRows().size() == 50 || !statement.hasNext());
+            rows.addAll(statement.getRows());
+            cursor = statement.getNextCursor();
+        }
+
+        assertTrue(rows.size() == member.numberOfParticipations());
+        long balance = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            balance += rows.get(i).getAmount().getUnits();
+            assertTrue(rows.get(i).getBalance().getUnits() == balance);
+            assertTrue(i == 0 || rows.get(i - 1).getDate().compareTo(rows.get(i).getDate()) <= 0);
+        }
+        assertTrue(rows.get(rows.size() - 1).getBalance().equals(member.getBalance()));
+        System.out.println(rows.get(0));
+
+        // Test: a page in the middle starts from the checkpoints
+        Statement statement = member.getStatement(rows.size() - 3, 20);
+        assertTrue(statement.getRows().size() == 3 && !statement.hasNext());
+        assertTrue(statement.getRows().get(0).getBalance().equals(rows.get(rows.size() - 3).getBalance()));
+
+        // Test: invalid cursor
+        try {
+            member.getStatement(rows.size() + 1, 20);
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+        }
+    }
+
+    @Test
+    void testSearchPurchases() {
+        Group group = new Group("Search", "", Currency.Euro);
+        for (int i = 0; i < 3; i++) {
+            group.addMember(String.format("member_%d", i));
+        }
+
+        Purchase hotel = group.addPurchase("Hotel Vienna", "member_0", List.of("member_0", "member_1"),
+                Money.of(100.0, Currency.Euro), new TimeStamp("02.03.2021"));
+        Purchase fuel = group.addPurchase("Fuel, highway", "member_1", List.of("member_2"),
+                Money.of(50.0, Currency.Euro), new TimeStamp("01.03.2021"));
+        Purchase hostel = group.addPurchase("hostel (Vienna)", "member_2", List.of("member_1"),
+                Money.of(30.0, Currency.Euro), new TimeStamp("03.03.2021"));
+        group.addTransfer("Hotel payback", "member_1", "member_0", Money.of(10.0, Currency.Euro),
+                new TimeStamp("04.03.2021"));
+
+        // Test: exact, prefix and AND queries ignoring case, ordered by date
+        assertTrue(group.searchPurchases("hotel").equals(List.of(hotel)));
+        assertTrue(group.searchPurchases("HO*").equals(List.of(hotel, hostel)));
+        assertTrue(group.searchPurchases("vienna ho*").equals(List.of(hotel, hostel)));
+        assertTrue(group.searchPurchases("vienna fuel").isEmpty());
+        assertTrue(group.searchPurchases("fu* highway").equals(List.of(fuel)));
+        assertTrue(group.searchPurchases("  ").isEmpty());
+
+        // Test: member filters
+        assertTrue(group.searchPurchases("vienna", 2, -1).equals(List.of(hostel)));
+        assertTrue(group.searchPurchases("vienna", -1, 1).equals(List.of(hotel, hostel)));
+        assertTrue(group.searchPurchases("vienna", 0, 2).isEmpty());
+
+        // Test: the index follows additions, updates and removals
+        Purchase fuel_2 = group.addPurchase("fuel", "member_0", List.of("member_1"), Money.of(20.0, Currency.Euro),
+                new TimeStamp("28.02.2021"));
+        assertTrue(group.searchPurchases("fuel").equals(List.of(fuel_2, fuel)));
+        group.updatePurchase(fuel, "Toll highway", "member_1", List.of("member_2"), Money.of(50.0, Currency.Euro),
+                new TimeStamp("01.03.2021"));
+        assertTrue(group.searchPurchases("fuel").equals(List.of(fuel_2)));
+        assertTrue(group.searchPurchases("toll").equals(List.of(fuel)));
+        group.removePurchase(hotel);
+        assertTrue(group.searchPurchases("ho*").equals(List.of(hostel)));
+        group.setExchangeRate(Currency.USD, 2.0, new TimeStamp("01.01.2021"));
+        assertTrue(group.searchPurchases("vienna").equals(List.of(hostel)));
+    }
+
+    @Test
+    void testConcurrentGroup() {
+        Group group = new Group("Concurrent", "", Currency.Euro);
+        group.setExchangeRate(Currency.USD, 0.8);
+        for (int i = 0; i < 5; i++) {
+            group.addMember(String.format("member_%d", i));
+        }
+        ConcurrentGroup concurrent = new ConcurrentGroup(group);
+        List<String> names = group.getMemberNames();
+
+        // Test: concurrent writers and a reader checking consistent views
+        int writers = 4;
+        int rows = 3000;
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int t = 0; t < writers; t++) {
+            int seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < rows; i++) {
+                    Money amount = Money.of(1 + random.nextInt(10000) / 100.0, i % 3 == 0 ? Currency.USD : Currency.Euro);
+                    TimeStamp date = TimeStamp.ofEpochSecond(new TimeStamp("01.01.2021").getEpochSecond() + i * 3600L);
+                    if (i % 10 == 0) {
+                        concurrent.addTransfer("transfer", names.get(random.nextInt(5)), names.get(random.nextInt(5)), amount, date);
+                    } else {
+                        concurrent.addPurchase(String.format("purchase_%d", seed), names.get(random.nextInt(5)),
+                                List.of(names.get(random.nextInt(5)), names.get(random.nextInt(5))), amount, date);
+                    }
+                }
+            }));
+        }
+        threads.add(new Thread(() -> {
+            int last = 0;
+            while (last < writers * rows) {
+                int count = concurrent.read(a -> {
+                    long sum = 0;
+                    for (Member member : a.getMembers()) {
+                        sum += member.getBalance().getUnits();
+                    }
+                    if (sum != 0 || a.getBalancesAsOf(new TimeStamp("01.01.2030")).size() != 5) {
+                        throw new AssertionError("Inconsistent view!");
+                    }
+                    a.checkAggregates();
+                    return a.getPurchases().size() + a.getTransfers().size();
+                });
+                if (count < last) {
+                    errors.add(new AssertionError("Entries lost!"));
+                }
+                last = count;
+            }
+        }));
+
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((a, e) -> errors.add(e));
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        assertTrue(errors.isEmpty());
+
+        // Test: the result equals a sequential ingestion
+        Group expected = new Group("Concurrent", "", Currency.Euro);
+        expected.setExchangeRate(Currency.USD, 0.8);
+        for (String name : names) {
+            expected.addMember(name);
+        }
+        for (int t = 0; t < writers; t++) {
+            Random random = new Random(t);
+            for (int i = 0; i < rows; i++) {
+                Money amount = Money.of(1 + random.nextInt(10000) / 100.0, i % 3 == 0 ? Currency.USD : Currency.Euro);
+                TimeStamp date = TimeStamp.ofEpochSecond(new TimeStamp("01.01.2021").getEpochSecond() + i * 3600L);
+                if (i % 10 == 0) {
+                    expected.addTransfer("transfer", names.get(random.nextInt(5)), names.get(random.nextInt(5)), amount, date);
+                } else {
+                    expected.addPurchase(String.format("purchase_%d", t), names.get(random.nextInt(5)),
+                            List.of(names.get(random.nextInt(5)), names.get(random.nextInt(5))), amount, date);
+                }
+            }
+        }
+
+        concurrent.flush();
+        assertTrue(concurrent.getPending() == 0);
+        concurrent.read(a -> {
+            a.checkAggregates();
+            assertTrue(a.getPurchases().size() == expected.getPurchases().size());
+            assertTrue(a.getTurnover() == expected.getTurnover());
+            assertTrue(a.getMonthlyTurnovers().equals(expected.getMonthlyTurnovers()));
+            for (String name : names) {
+                assertTrue(a.getMemberByName(name).getBalance().equals(expected.getMemberByName(name).getBalance()));
+            }
+            return null;
+        });
+
+        // Test: unknown members are rejected by the writer
+        try {
+            concurrent.addPurchase("purchase", "member_9", List.of("member_0"), Money.of(1.0, Currency.Euro),
+                    new TimeStamp("01.01.2021"));
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+        }
+
+        // Test: failures reach the caller of the failing entry and keep the batch
+        Group dated = new Group("Dated", "", Currency.Euro);
+        dated.setExchangeRate(Currency.USD, 0.8, new TimeStamp("01.01.2022"));
+        dated.addMember("member_0");
+        dated.addMember("member_1");
+        ConcurrentGroup dated_concurrent = new ConcurrentGroup(dated);
+        dated_concurrent.addPurchase("purchase", "member_0", List.of("member_1"), Money.of(1.0, Currency.USD),
+                new TimeStamp("01.01.2022"));
+        try {
+            dated_concurrent.addPurchase("purchase", "member_0", List.of("member_1"), Money.of(1.0, Currency.USD),
+                    new TimeStamp("31.12.2021"));
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+        }
+        try {
+            dated_concurrent.addPurchase("purchase", "member_0", List.of(), Money.of(1.0, Currency.Euro),
+                    new TimeStamp("01.01.2022"));
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+        }
+        assertTrue(dated_concurrent.getPending() == 1);
+        dated_concurrent.read(a -> {
+            a.checkAggregates();
+            assertTrue(a.getPurchases().size() == 1 && a.getMemberByName("member_0").getBalance().getUnits() == 125);
+            return null;
+        });
+    }
+
+    @Test
+    void testGroupReader() {
+        // Test: load keeps the file content
+        Group group = new Group(path_1);
+        assertTrue(group.getNumberOfMembers() == 2);
+        group.save(path_2);
+
+        try {
+            Gson gson = new Gson();
+
+            JsonReader reader_1 = new JsonReader(new FileReader(path_1));
+            Map<?, ?> gson_root_1 = gson.fromJson(reader_1, Map.class);
+
+            JsonReader reader_2 = new JsonReader(new FileReader(path_2));
+            Map<?, ?> gson_root_2 = gson.fromJson(reader_2, Map.class);
+            assertTrue(gson_root_1.equals(gson_root_2));
+
+            reader_1.close();
+            reader_2.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException();
+        }
+
+        // Test: rates preceding the purchases
+        String path = ".gradle/test_reader.json";
+        String content = "{\"name\": \"Reader\", \"description\": \"\", \"currency\": \"Euro\",\n"
+                + "\"exchange_rates\": {\"USD\": 2.0},\n"
+                + "\"members\": [{\"name\": \"member_1\"}, {\"name\": \"member_2\"}],\n"
+                + "\"purchases\": [{\"title\": \"purchase_1\", \"purchaser\": \"member_1\",\n"
+                + "\"recipients\": [\"member_2\"], \"amount\": 10.0, \"currency\": \"USD\",\n"
+                + "\"date\": \"01.03.2021 12:00:00\"}],\n"
+                + "\"transfers\": []}";
+        write(path, content);
+        group = new Group(path);
+        assertTrue(group.getMemberByName("member_1").getBalance().equals(Money.of(5.0, Currency.Euro)));
+
+        // Test: purchases preceding the members, legacy rates last with the group currency
+        write(path, "{\"name\": \"Reader\", \"description\": \"\", \"currency\": \"Euro\",\n"
+                + "\"purchases\": [{\"title\": \"purchase_1\", \"purchaser\": \"member_1\",\n"
+                + "\"recipients\": [\"member_2\"], \"amount\": 10.0, \"currency\": \"USD\",\n"
+                + "\"date\": \"01.03.2021 12:00:00\"}],\n"
+                + "\"members\": [{\"name\": \"member_1\"}, {\"name\": \"member_2\"}],\n"
+                + "\"transfers\": [],\n"
+                + "\"exchange_rates\": {\"Euro\": 1.0, \"USD\": 2.0}}");
+        group = new Group(path);
+        assertTrue(group.getMemberByName("member_1").getBalance().equals(Money.of(5.0, Currency.Euro)));
+
+        // Test: rates and history preceding the group currency
+        write(path, "{\"exchange_rates\": {\"Euro\": 1.0, \"USD\": 2.0},\n"
+                + "\"exchange_rate_history\": {\"USD\": {\"01.06.2021\": 4.0}},\n"
+                + "\"members\": [{\"name\": \"member_1\"}, {\"name\": \"member_2\"}],\n"
+                + "\"purchases\": [{\"title\": \"purchase_1\", \"purchaser\": \"member_1\",\n"
+                + "\"recipients\": [\"member_2\"], \"amount\": 10.0, \"currency\": \"USD\",\n"
+                + "\"date\": \"01.03.2021 12:00:00\"}],\n"
+                + "\"transfers\": [], \"name\": \"Reader\", \"description\": \"\", \"currency\": \"Euro\"}");
+        group = new Group(path);
+        assertTrue(group.getMemberByName("member_1").getBalance().equals(Money.of(5.0, Currency.Euro)));
+        assertTrue(group.exchange(Money.of(8.0, Currency.USD)).equals(Money.of(2.0, Currency.Euro)));
+
+        // Test: errors report the location
+        write(path, content.replace("[\"member_2\"]", "[\"member_3\"]"));
+        try {
+            new Group(path);
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+            assertTrue(e.getMessage().contains("member_3") && e.getMessage().contains("line 5"));
+        }
+
+        write(path, content.replace("10.0", "ten"));
+        try {
+            new Group(path);
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+            assertTrue(e.getMessage().contains("line 5") && e.getMessage().contains("amount"));
+        }
+
+        write(path, content.replace("\"currency\": \"Euro\",\n\"exchange_rates\": {\"USD\": 2.0}",
+                "\"exchange_rates\": {\"USD\": 0.0}, \"currency\": \"Euro\""));
+        try {
+            new Group(path);
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+            assertTrue(e.getMessage().contains("line 1"));
+        }
+    }
+
+    @Test
+    void testSave() {
+        Group group = new Group(path_1);
+        group.setExchangeRate(Currency.USD, 1.5, new TimeStamp("01.01.2022"));
+
+        // Test: compact and pretty output hold the same content
+        String path = ".gradle/test_save.json";
+        group.save(path, false);
+        try {
+            Gson gson = new Gson();
+
+            String compact = Files.readString(Path.of(path));
+            assertTrue(!compact.contains("\n"));
+            assertTrue(gson.fromJson(compact, Map.class).equals(group.toDict()));
+
+            group.save(path);
+            String pretty = Files.readString(Path.of(path));
+            assertTrue(pretty.contains("\n  \"name\""));
+            assertTrue(gson.fromJson(pretty, Map.class).equals(group.toDict()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // Test: no temporary file is left behind
+        assertTrue(!Files.exists(Path.of(path + ".tmp")));
+
+        // Test: missing directory
+        try {
+            group.save(".gradle/missing/test_save.json");
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getClass().getName()));
+        }
+
+        // Test: reload
+        assertTrue(new Group(path).toDict().equals(group.toDict()));
+    }
+
+    @Test
+    void testBinaryFormat() {
+        Group group = new Group(path_1);
+        group.setExchangeRate(Currency.USD, 1.5, new TimeStamp("01.01.2022"));
+        group.addTransfer("transfer_1", "member_2", "member_1", Money.of(-0.05, Currency.USD),
+                new TimeStamp("02.01.2022"));
+
+        // Test: Json to binary and back
+        String path = ".gradle/test_binary.jsplit";
+        group.save(path);
+        Group loaded = new Group(path);
+        assertTrue(loaded.toDict().equals(group.toDict()));
+        assertTrue(loaded.getMemberByName("member_1").getBalance().equals(group.getMemberByName("member_1").getBalance()));
+
+        loaded.save(path_2);
+        assertTrue(new Group(path_2).toDict().equals(group.toDict()));
+
+        try {
+            // Test: smaller than Json
+            assertTrue(Files.size(Path.of(path)) < Files.size(Path.of(path_2)));
+
+            // Test: truncated file
+            byte[] bytes = Files.readAllBytes(Path.of(path));
+            String truncated = ".gradle/test_truncated.jsplit";
+            Files.write(Path.of(truncated), Arrays.copyOf(bytes, bytes.length - 3));
+            try {
+                new Group(truncated).getPurchases();
+                assertTrue(false);
+            } catch (RuntimeException e) {
+                System.out.println(String.format("Catched: %s!", e.getMessage()));
+                assertTrue(e.getMessage().contains("Truncated"));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void testLazyLoading() {
+        Group group = new Group(path_1);
+        group.setExchangeRate(Currency.USD, 1.5, new TimeStamp("01.01.2022"));
+        group.addPurchase("purchase_3", "member_2", List.of("member_1"), Money.of(7.0, Currency.USD),
+                new TimeStamp("02.01.2022"));
+        String path = ".gradle/test_lazy.jsplit";
+        group.save(path);
+
+        // Test: balances from the summary
+        Group lazy = new Group(path);
+        assertTrue(!lazy.isLoaded());
+        assertTrue(lazy.getTurnover() == group.getTurnover());
+        assertTrue(lazy.getMemberByName("member_1").getBalance().equals(group.getMemberByName("member_1").getBalance()));
+        assertTrue(lazy.getPendingBalances().size() == group.getPendingBalances().size());
+
+        // Test: changing an existing rate keeps the history deferred
+        lazy.setExchangeRate(Currency.USD, 3.0, new TimeStamp("01.01.2022"));
+        group.setExchangeRate(Currency.USD, 3.0, new TimeStamp("01.01.2022"));
+        assertTrue(!lazy.isLoaded());
+        assertTrue(lazy.getMemberByName("member_2").getBalance().equals(group.getMemberByName("member_2").getBalance()));
+
+        // Test: additions before the history is loaded
+        lazy.addPurchase("purchase_4", "member_1", List.of("member_2"), Money.of(3.0, Currency.Euro),
+                new TimeStamp("03.01.2022"));
+        group.addPurchase("purchase_4", "member_1", List.of("member_2"), Money.of(3.0, Currency.Euro),
+                new TimeStamp("03.01.2022"));
+        assertTrue(!lazy.isLoaded());
+        assertTrue(lazy.getMemberByName("member_1").getBalance().equals(group.getMemberByName("member_1").getBalance()));
+
+        // Test: single entries are decoded from their page
+        assertTrue(lazy.getNumberOfPurchases() == group.getPurchases().size());
+        assertTrue(lazy.getNumberOfTransfers() == group.getTransfers().size());
+        for (int i = 0; i < lazy.getNumberOfPurchases(); i++) {
+            assertTrue(lazy.getPurchase(i).toString().equals(group.getPurchases().get(i).toString()));
+        }
+        assertTrue(lazy.getTransfer(0).toString().equals(group.getTransfers().get(0).toString()));
+        lazy.print();
+        assertTrue(!lazy.isLoaded());
+
+        // Test: the history is loaded on demand
+        assertTrue(lazy.getPurchases().size() == group.getPurchases().size());
+        assertTrue(lazy.isLoaded());
+        assertTrue(lazy.getPurchases().get(lazy.getPurchases().size() - 1).getAmount().equals(Money.of(3.0, Currency.Euro)));
+        assertTrue(lazy.getMemberByName("member_1").getBalance().equals(group.getMemberByName("member_1").getBalance()));
+        assertTrue(lazy.getMemberByName("member_1").numberOfParticipations()
+                == group.getMemberByName("member_1").numberOfParticipations());
+        lazy.checkAggregates();
+        assertTrue(lazy.getMonthlyTurnovers().equals(group.getMonthlyTurnovers()));
+
+        // Test: a new rate point loads the history
+        lazy = new Group(path);
+        lazy.setExchangeRate(Currency.USD, 2.0, new TimeStamp("01.06.2021"));
+        assertTrue(lazy.isLoaded());
+
+        // Test: entries spread over several pages
+        for (int i = 0; i < 2500; i++) {
+            group.addPurchase(String.format("purchase_%d", i), "member_1", List.of("member_2"),
+                    Money.of(0.01 * i, Currency.Euro), new TimeStamp("04.01.2022"));
+        }
+        group.save(path);
+        lazy = new Group(path);
+        for (int i : new int[] { 2000, 5, 1030, group.getPurchases().size() - 1 }) {
+            assertTrue(lazy.getPurchase(i).toString().equals(group.getPurchases().get(i).toString()));
+        }
+        assertTrue(!lazy.isLoaded());
+        try {
+            lazy.getPurchase(group.getPurchases().size());
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+        }
+    }
+
+    @Test
+    void testGroupRepository() {
+        String directory = ".gradle/test_repository";
+        try {
+            Files.createDirectories(Path.of(directory));
+            for (int i = 0; i < 3; i++) {
+                Files.deleteIfExists(Path.of(directory, String.format("group_%d.json", i)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        GroupRepository repository = new GroupRepository(directory, 8);
+        for (int i = 0; i < 3; i++) {
+            Group group = new Group(String.format("group_%d", i), "", Currency.Euro);
+            group.addMember("member_1");
+            group.addMember("member_2");
+            repository.create(String.format("group_%d", i), group);
+        }
+
+        // Test: eviction writes back dirty groups
+        assertTrue(repository.size() == 2);
+        assertTrue(repository.getEvictions() == 1 && repository.getWriteBacks() == 1);
+        assertTrue(Files.exists(Path.of(directory, "group_0.json")));
+        repository.flush();
+        assertTrue(repository.getWriteBacks() == 3);
+
+        // Test: hits and misses
+        Group group_2 = repository.get("group_2");
+        assertTrue(repository.get("group_2") == group_2);
+        assertTrue(repository.getHits() == 2 && repository.getMisses() == 0);
+        Group group_0 = repository.get("group_0");
+        assertTrue(repository.getMisses() == 1 && !repository.isCached("group_1"));
+
+        // Test: weight grows with the purchases
+        group_0.addPurchase("purchase_1", "member_1", List.of("member_1", "member_2"), 10.0, Currency.Euro,
+                new TimeStamp("01.03.2021"));
+        repository.markDirty("group_0");
+        assertTrue(repository.getWeight() == 7);
+
+        // Test: a changed file is loaded again
+        try {
+            Path path = Path.of(directory, "group_2.json");
+            Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 1000));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        assertTrue(repository.get("group_2") != group_2);
+
+        // Test: a rewrite with the same modification time but another size is loaded again
+        group_2 = repository.get("group_2");
+        String path_group_2 = directory + "/group_2.json";
+        try {
+            FileTime time = Files.getLastModifiedTime(Path.of(path_group_2));
+            Group changed = new Group(path_group_2);
+            changed.addMember("member_3");
+            changed.save(path_group_2);
+            Files.setLastModifiedTime(Path.of(path_group_2), time);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        assertTrue(repository.get("group_2") != group_2);
+
+        // Test: records appended to a journal log are loaded
+        group_2 = repository.get("group_2");
+        GroupJournal journal = GroupJournal.open(path_group_2);
+        journal.getGroup().addMember("member_4");
+        journal.close();
+        assertTrue(repository.get("group_2") != group_2);
+        assertTrue(repository.get("group_2").getNumberOfMembers() == 4);
+
+        // Test: close writes back
+        repository.close();
+        assertTrue(new Group(directory + "/group_0.json").getPurchases().size() == 1);
+        System.out.println(repository.toString());
+    }
+
+    @Test
+    void testGroupLoader() {
+        String directory = ".gradle/test_loader";
+        try {
+            Files.createDirectories(Path.of(directory));
+            Files.copy(Path.of(path_1), Path.of(directory, "group_0.json"), StandardCopyOption.REPLACE_EXISTING);
+            Files.writeString(Path.of(directory, "group_1.json"), "{\"name\": \"broken\",");
+            Files.writeString(Path.of(directory, "notes.txt"), "");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        new Group(path_1).save(directory + "/group_2.jsplit");
+
+        // Test: failures are collected per file
+        List<String> paths = GroupLoader.list(directory);
+        assertTrue(paths.size() == 3);
+        GroupLoader.Result<Group> result = new GroupLoader(2).load(paths);
+        assertTrue(result.getValues().size() == 2 && result.hasFailures());
+        String failure = result.getFailures().keySet().iterator().next();
+        assertTrue(failure.endsWith("group_1.json"));
+        assertTrue(result.getFailures().get(failure).getMessage().contains("group_1.json"));
+        System.out.println(String.format("Catched: %s!", result.getFailures().get(failure).getMessage()));
+
+        // Test: mapped values
+        GroupLoader.Result<Double> turnovers = new GroupLoader(4).load(paths, a -> a.getTurnover());
+        assertTrue(turnovers.getValues().get(paths.get(0)).equals(turnovers.getValues().get(paths.get(2))));
+    }
+
+    @Test
+    void testGroupJournal() {
+        String path = ".gradle/test_journal.json";
+        Path log = Path.of(path + ".log");
+        Group group = new Group("Journal", "", Currency.Euro);
+        group.addMember("member_1");
+
+        // Test: changes are appended to the log
+        GroupJournal journal = GroupJournal.create(path, group);
+        group.addMember("member_2");
+        group.setExchangeRate(Currency.USD, 2.0);
+        Purchase purchase_1 = group.addPurchase("purchase_1", "member_1", List.of("member_1", "member_2"),
+                Money.of(10.0, Currency.USD), new TimeStamp("01.03.2021"));
+        Purchase purchase_2 = group.addPurchase("purchase_2", "member_2", List.of("member_1"),
+                Money.of(20.0, Currency.Euro), new TimeStamp("02.03.2021"));
+        group.addTransfer("transfer_1", "member_2", "member_1", Money.of(5.0, Currency.Euro),
+                new TimeStamp("03.03.2021"));
+        group.setExchangeRate(Currency.USD, 4.0, new TimeStamp("01.04.2021"));
+        group.updatePurchase(purchase_2, "purchase_2", "member_2", List.of("member_1", "member_2"),
+                Money.of(30.0, Currency.Euro), new TimeStamp("02.03.2021"));
+        group.removePurchase(purchase_1);
+        assertTrue(journal.size() == 8);
+        journal.close();
+
+        // Test: replay of snapshot and log
+        Group loaded = GroupJournal.open(path).getGroup();
+        assertTrue(loaded.toDict().equals(group.toDict()));
+        assertTrue(loaded.getMemberByName("member_1").getBalance().equals(group.getMemberByName("member_1").getBalance()));
+
+        try {
+            // Test: a torn last record is dropped
+            Files.writeString(log, "{\"op\": \"member\", \"na", StandardOpenOption.APPEND);
+            journal = GroupJournal.open(path);
+            assertTrue(journal.getGroup().toDict().equals(group.toDict()));
+            journal.getGroup().addMember("member_3");
+            journal.close();
+            assertTrue(GroupJournal.open(path).getGroup().getNumberOfMembers() == 3);
+
+            // Test: compaction folds the log into the snapshot
+            byte[] folded = Files.readAllBytes(log);
+            journal = GroupJournal.open(path);
+            journal.compact();
+            assertTrue(journal.size() == 0);
+            journal.close();
+            Map<String, Object> compacted = new Group(path).toDict();
+            assertTrue(GroupJournal.open(path).getGroup().toDict().equals(compacted));
+
+            // Test: a log already folded by an interrupted compaction is discarded
+            Files.write(log, folded);
+            journal = GroupJournal.open(path);
+            assertTrue(journal.getGroup().toDict().equals(compacted));
+            assertTrue(journal.size() == 0);
+            journal.close();
+
+            // Test: a plain load replays the pending log
+            journal = GroupJournal.open(path);
+            journal.getGroup().addPurchase("purchase_3", "member_1", List.of("member_2"),
+                    Money.of(8.0, Currency.Euro), new TimeStamp("04.03.2021"));
+            journal.close();
+            int count = GroupJournal.open(path).getGroup().getPurchases().size();
+            assertTrue(new Group(path).getPurchases().size() == count);
+
+            // Test: saving the journaled group then reopening does not replay twice
+            journal = GroupJournal.open(path);
+            journal.getGroup().save(path);
+            assertTrue(journal.size() == 0);
+            journal.close();
+            assertTrue(GroupJournal.open(path).getGroup().getPurchases().size() == count);
+            assertTrue(new Group(path).getPurchases().size() == count);
+
+            // Test: saving a plain load over the snapshot folds the log
+            journal = GroupJournal.open(path);
+            journal.getGroup().removePurchase(journal.getGroup().getPurchases().get(0));
+            journal.close();
+            new Group(path).save(path);
+            assertTrue(!Files.exists(log));
+            assertTrue(GroupJournal.open(path).getGroup().getPurchases().size() == count - 1);
+            assertTrue(new Group(path).getPurchases().size() == count - 1);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void testImportPurchases() {
+        Group group = new Group("Import", "", Currency.Euro);
+        group.addMember("member_1");
+        group.addMember("member_2");
+        group.addMember("member_3");
+        Group expected = new Group("Import", "", Currency.Euro);
+        expected.addMember("member_1");
+        expected.addMember("member_2");
+        expected.addMember("member_3");
+
+        // Test: CSV with quoted fields, transfers and invalid rows
+        String csv = String.join("\n",
+                "date,title,purchaser,recipients,amount,currency,type",
+                "01.03.2021,\"Dinner, \"\"late\"\"\",member_1,member_1;member_2;member_3,30.00,Euro,",
+                "02.03.2021,Taxi,member_2,member_3;member_1,12.50,,purchase",
+                "03.03.2021,Unknown,member_4,member_1,5.00,Euro,",
+                "04.03.2021,Dollar,member_1,member_2,5.00,USD,",
+                "",
+                "05.03.2021,Payback,member_2,member_1,10.00,Euro,transfer",
+                "06.03.2021,Invalid,member_2,member_1;member_3,10.00,Euro,transfer",
+                "xx.03.2021,Invalid,member_2,member_1,10.00,Euro,");
+        PurchaseImporter.Result result = group.importPurchases(new StringReader(csv));
+        System.out.println(String.format("Catched: %s!", result.getErrors()));
+        assertTrue(result.getImported() == 3);
+        assertTrue(result.getErrors().keySet().equals(Set.of(4L, 5L, 8L, 9L)));
+
+        expected.addPurchase("Dinner, \"late\"", "member_1", List.of("member_1", "member_2", "member_3"),
+                Money.of(30.0, Currency.Euro), new TimeStamp("01.03.2021"));
+        expected.addPurchase("Taxi", "member_2", List.of("member_1", "member_3"),
+                Money.of(12.5, Currency.Euro), new TimeStamp("02.03.2021"));
+        expected.addTransfer("Payback", "member_2", "member_1", Money.of(10.0, Currency.Euro),
+                new TimeStamp("05.03.2021"));
+        assertTrue(group.toDict().equals(expected.toDict()));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(group.getMember(i).getBalance().equals(expected.getMember(i).getBalance()));
+        }
+
+        // Test: Json lines are journaled
+        String path = ".gradle/test_import.json";
+        GroupJournal journal = GroupJournal.create(path, group);
+        group.setExchangeRate(Currency.USD, 2.0);
+        String json = String.join("\n",
+                "{\"title\": \"Hotel\", \"purchaser\": \"member_3\", \"recipients\": [\"member_1\", \"member_2\"], "
+                        + "\"amount\": 40.0, \"currency\": \"USD\", \"date\": \"07.03.2021\"}",
+                "{\"title\": \"Broken\", \"purchaser\": \"member_3\"",
+                "{\"title\": \"Missing\", \"purchaser\": \"member_3\", \"recipients\": [\"member_1\"], "
+                        + "\"date\": \"07.03.2021\"}");
+        result = group.importPurchases(new StringReader(json));
+        System.out.println(String.format("Catched: %s!", result.getErrors()));
+        assertTrue(result.getImported() == 1);
+        assertTrue(result.getErrors().keySet().equals(Set.of(2L, 3L)));
+        assertTrue(journal.size() == 2);
+        journal.close();
+        assertTrue(GroupJournal.open(path).getGroup().toDict().equals(group.toDict()));
+
+        // Test: CSV without mandatory column
+        try {
+            group.importPurchases(new StringReader("title,purchaser,recipients,amount\n"));
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getMessage()));
+        }
+    }
+
+    /**
+     * Writes a string to a file.
+     */
+    private static void write(String path, String content) {
+        try {
+            Files.writeString(Path.of(path), content);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
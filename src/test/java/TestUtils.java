@@ -21,8 +21,11 @@
 // SOFTWARE.
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -32,6 +35,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import javasplit.utils.Base;
 import javasplit.utils.Currency;
 import javasplit.utils.InputScanner;
+import javasplit.utils.Money;
 import javasplit.utils.TimeStamp;
 import javasplit.utils.Utils;
 
@@ -44,6 +48,15 @@ public class TestUtils {
         // Test: construction
         Base base = new Base();
 
+        // Test: lazy stamp taken once on the first access
+        TimeStamp stamp = base.getStamp();
+        assertTrue(stamp != null && stamp == base.getStamp());
+
+        // Test: a set stamp is kept
+        Base loaded = new Base();
+        loaded.setTime(date_string);
+        assertTrue(loaded.getStamp().toString().equals(date_string));
+
         // Test: set the time
         base.setTime(LocalDateTime.now());
         base.setTime(date_time_string);
@@ -94,6 +107,37 @@ public class TestUtils {
         scanner.close();
     }
 
+    @Test
+    void testMoney() {
+        // Test: construction from decimal values
+        Money money = Money.of(0.285, Currency.Euro);
+        assertTrue(money.getUnits() == 28);
+        assertTrue(Money.of(100.0, Currency.USD).toDouble() == 100.0);
+        System.out.println(money);
+
+        // Test: arithmetic
+        assertTrue(money.add(money).subtract(money).equals(money));
+        assertTrue(money.negate().signum() == -1);
+        assertTrue(Money.zero(Currency.Euro).isZero());
+
+        // Test: largest remainder split
+        Money[] shares = Money.of(100.0, Currency.Euro).split(3);
+        assertTrue(shares[0].getUnits() == 3334);
+        assertTrue(shares[1].getUnits() == 3333);
+        assertTrue(shares[2].getUnits() == 3333);
+
+        shares = new Money(-5, Currency.Euro).split(3);
+        assertTrue(shares[0].getUnits() + shares[1].getUnits() + shares[2].getUnits() == -5);
+
+        // Test: raise on currency mismatch
+        try {
+            money.add(Money.zero(Currency.USD));
+            throw new AssertionError("Exception not captured!");
+        } catch (RuntimeException e) {
+            System.out.println(String.format("Catched: %s!", e.getClass().getName()));
+        }
+    }
+
     @Test
     void testStamp() {
         // Test: overload construction
@@ -103,14 +147,26 @@ public class TestUtils {
         TimeStamp stamp_2 = new TimeStamp(now);
         TimeStamp stamp_3 = new TimeStamp(date_time_string);
 
-        // Test: set short date string
+        // Test: short date string
         System.out.println(stamp_1);
-        stamp_1.setTime(date_string);
+        stamp_1 = new TimeStamp(date_string);
         System.out.println(stamp_1);
+        assertTrue(stamp_1.isDateOnly() && !stamp_3.isDateOnly());
+
+        // Test: shared clock stamp of the current second
+        LocalDateTime before = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        TimeStamp stamp_4 = TimeStamp.now();
+        assertTrue(!stamp_4.getTime().isBefore(before.minusSeconds(1)));
+        assertTrue(!stamp_4.getTime().isAfter(LocalDateTime.now()));
 
-        // Test: get time object
+        // Test: get time object truncated to seconds
         LocalDateTime time = stamp_2.getTime();
-        assertTrue(time.equals(now));
+        assertTrue(time.equals(now.truncatedTo(ChronoUnit.SECONDS)));
+
+        // Test: value semantics
+        assertTrue(stamp_1.equals(new TimeStamp(date_string)) && stamp_1.hashCode() == new TimeStamp(date_string).hashCode());
+        assertTrue(stamp_1.compareTo(stamp_3) < 0);
+        assertTrue(TimeStamp.ofEpochSecond(stamp_3.getEpochSecond()).toString().equals(date_time_string));
 
         // Test: toString()
         assertTrue(date_string.equals(stamp_1.toString()));
@@ -119,11 +175,45 @@ public class TestUtils {
         // Test: raise DateTimeParseException
         try {
             String false_date_string = "01.02.22";
-            stamp_2.setTime(false_date_string);
+            new TimeStamp(false_date_string);
             throw new AssertionError("Exception not captured!");
         } catch (DateTimeParseException e) {
             System.out.println(String.format("Catched: %s!", e.getClass().getName()));
         }
+
+        // Test: format like the DateTimeFormatter across the supported years
+        for (long day = -719162; day < 2932897; day += 997) {
+            TimeStamp tmp = TimeStamp.ofEpochSecond(day * 86400 + (day % 2) * 45296);
+            assertTrue(tmp.toString().equals(tmp.getTime().format(
+                    day % 2 == 0 ? DateTimeFormatter.ofPattern("dd.MM.yyyy") : DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))));
+            assertTrue(new TimeStamp(tmp.toString()).equals(tmp));
+        }
+
+        // Test: parse and format like the DateTimeFormatter
+        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
+        DateTimeFormatter fmt_date = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+        for (String tmp : List.of("01.01.0001", "29.02.2020", "31.02.2021", "31.12.9999", "31.04.2021 23:59:59",
+                "24.06.2021 24:00:00", "32.01.2021", "00.01.2021", "01.13.2021", "01.01.0000", "1.1.2021",
+                "01.01.2021 ", "01.01.2021 12:00", "01.01.2021 23:59:60", "01.01.2021 24:00:01", "01-01-2021",
+                "01.01.12345", "01.01.2021T12:00:00", "")) {
+            LocalDateTime expected;
+            try {
+                expected = tmp.length() == 10 ? LocalDate.parse(tmp, fmt_date).atStartOfDay()
+                        : LocalDateTime.parse(tmp, fmt);
+            } catch (DateTimeParseException e) {
+                expected = null;
+            }
+
+            try {
+                LocalDateTime parsed = TimeStamp.parse(tmp);
+                assertTrue(parsed.equals(expected));
+                assertTrue(new TimeStamp(parsed).toString().equals(
+                        parsed.equals(parsed.toLocalDate().atStartOfDay()) ? parsed.format(fmt_date) : parsed.format(fmt)));
+            } catch (DateTimeParseException e) {
+                assertTrue(expected == null);
+                System.out.println(String.format("Catched: %s!", e.getMessage()));
+            }
+        }
     }
 
     @Test
@@ -137,5 +227,11 @@ public class TestUtils {
         List<Double> tmp_2 = Utils.convertAll(tmp, a -> a + value);
         System.out.println(tmp_2);
         assertTrue(tmp_2.get(0) == value + value);
+
+        // Test: roundPreservingSum
+        long[] rounded = Utils.roundPreservingSum(new double[] { 0.4, 0.4, 0.2, -1.0 });
+        assertTrue(rounded[0] == 1 && rounded[1] == 0 && rounded[2] == 0 && rounded[3] == -1);
+        rounded = Utils.roundPreservingSum(new double[] { 23403.36, -23403.36 });
+        assertTrue(rounded[0] == 23403 && rounded[1] == -23403);
     }
 }
\ No newline at end of file